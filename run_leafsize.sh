@@ -0,0 +1,12 @@
+#!/bin/bash
+
+test=${1:-MonteCarloPi}
+N=${2:-1073741824}
+
+for P in 1 2 4 8 16 32
+do
+    for L in 1024 4096 16384 65536 262144 1048576 4194304
+    do
+        java -XX:-TieredCompilation -Djava.util.concurrent.ForkJoinPool.common.parallelism=$P -jar -Dbenchmark.n=$N -Dbenchmark.leafSize=$L target/microbenchmarks.jar -f 2 -rf csv -rff $test.$N.$P.$L.txt ".*$test.*Bulk"
+    done
+done
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package oracle.lambda.devoxx;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Learns, per workload shape, the size at which parallel evaluation
+ * becomes faster than sequential evaluation, and routes calls accordingly.
+ * <p>
+ * The first time a shape is asked about, the workload is first warmed up
+ * in both modes at the size asked about, and then timed sequentially and
+ * in parallel at sizes doubling up to that size, alternating which mode
+ * runs first between rounds. The break-even size is the first size from which parallel
+ * evaluation is faster at two successive sizes. If there is none, the
+ * largest size calibrated is recorded instead, and calibration is repeated
+ * if a larger size is later asked about.
+ * <p>
+ * Results are kept in a properties file, so later runs need not calibrate.
+ * Break-even sizes depend on the number of workers, so shapes are keyed by
+ * the common pool parallelism as well as by name.
+ */
+final class AdaptiveThresholds {
+
+    /**
+     * A workload that can be evaluated at any size up to that calibrated
+     * for, sequentially or in parallel.
+     */
+    interface Workload {
+        Object run(long n, boolean parallel);
+    }
+
+    private static final int REPS = 7;
+
+    private static final long BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final int WARMUP_REPS = 3;
+
+    private static final long WARMUP_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private static volatile AdaptiveThresholds shared;
+
+    private final Path file;
+    private final Properties thresholds = new Properties();
+
+    // Consumes workload results, so that they are not optimized away
+    private volatile int sink;
+
+    AdaptiveThresholds(Path file) {
+        this.file = file;
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                thresholds.load(in);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Returns thresholds kept in the file given by the system property
+     * {@code benchmark.thresholds}, defaulting to a file in the temporary
+     * directory.
+     */
+    static AdaptiveThresholds shared() {
+        AdaptiveThresholds t = shared;
+        if (t == null) {
+            synchronized (AdaptiveThresholds.class) {
+                if ((t = shared) == null) {
+                    String file = System.getProperty("benchmark.thresholds",
+                                                     Paths.get(System.getProperty("java.io.tmpdir"),
+                                                               "adaptive-thresholds.properties").toString());
+                    shared = t = new AdaptiveThresholds(Paths.get(file));
+                }
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Returns true if a workload of the given shape and size should be
+     * evaluated in parallel, calibrating the shape if necessary.
+     */
+    boolean isParallel(String shape, long n, Workload w) {
+        return n >= threshold(shape, n, w);
+    }
+
+    /**
+     * Returns the break-even size of a shape, or {@code Long.MAX_VALUE} if
+     * parallel evaluation is not faster at any size up to {@code n}.  An
+     * empty workload, {@code n < 1}, is not calibrated and is sequential.
+     */
+    synchronized long threshold(String shape, long n, Workload w) {
+        if (n < 1)
+            return Long.MAX_VALUE;
+        String key = shape + "@" + ForkJoinPool.getCommonPoolParallelism();
+        String v = thresholds.getProperty(key + ".threshold");
+        if (v != null) {
+            return Long.parseLong(v);
+        }
+        v = thresholds.getProperty(key + ".calibrated");
+        if (v != null && n <= Long.parseLong(v)) {
+            return Long.MAX_VALUE;
+        }
+
+        long t = calibrate(n, w);
+        if (t == Long.MAX_VALUE) {
+            thresholds.setProperty(key + ".calibrated", Long.toString(n));
+        }
+        else {
+            thresholds.setProperty(key + ".threshold", Long.toString(t));
+        }
+        store();
+        return t;
+    }
+
+    private long calibrate(long max, Workload w) {
+        warmUp(w, max);
+        long candidate = Long.MAX_VALUE;
+        for (long n = 1; ; n = Math.min(n << 1, max)) {
+            if (parallelFaster(w, n)) {
+                if (candidate == Long.MAX_VALUE) {
+                    candidate = n;
+                }
+                else {
+                    return candidate;
+                }
+            }
+            else {
+                candidate = Long.MAX_VALUE;
+            }
+            if (n == max) {
+                // A single win at the largest size is taken as break-even
+                return candidate;
+            }
+        }
+    }
+
+    /**
+     * Runs the workload in both modes at the given size, alternately, at
+     * least a few times each and otherwise for up to the warm up budget,
+     * so that both are compiled before being timed.
+     */
+    private void warmUp(Workload w, long n) {
+        long deadline = System.nanoTime() + WARMUP_NANOS;
+        for (int i = 0; i < WARMUP_REPS || System.nanoTime() < deadline; i++) {
+            sink += w.run(n, (i & 1) == 0).hashCode();
+            sink += w.run(n, (i & 1) != 0).hashCode();
+        }
+    }
+
+    /**
+     * Returns true if the best parallel time is less than the best
+     * sequential time at the given size.  Each round times both modes,
+     * alternating which runs first, after an untimed round at that size.
+     */
+    private boolean parallelFaster(Workload w, long n) {
+        sink += w.run(n, true).hashCode();
+        sink += w.run(n, false).hashCode();
+
+        long bestParallel = Long.MAX_VALUE, bestSequential = Long.MAX_VALUE;
+        long deadline = System.nanoTime() + BUDGET_NANOS;
+        for (int i = 0; i < REPS; i++) {
+            boolean parallelFirst = (i & 1) == 0;
+            long first = time(w, n, parallelFirst);
+            long second = time(w, n, !parallelFirst);
+            bestParallel = Math.min(bestParallel, parallelFirst ? first : second);
+            bestSequential = Math.min(bestSequential, parallelFirst ? second : first);
+            if (i > 0 && System.nanoTime() > deadline) {
+                break;
+            }
+        }
+        return bestParallel < bestSequential;
+    }
+
+    private long time(Workload w, long n, boolean parallel) {
+        long t = System.nanoTime();
+        sink += w.run(n, parallel).hashCode();
+        return System.nanoTime() - t;
+    }
+
+    private void store() {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            thresholds.store(out, "Break-even sizes for parallel evaluation");
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
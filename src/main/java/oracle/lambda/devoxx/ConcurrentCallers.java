@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package oracle.lambda.devoxx;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.GenerateMicroBenchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toList;
+
+/*
+
+for P in common isolated shared; do java -XX:-TieredCompilation -Dbenchmark.pool=$P -jar target/microbenchmarks.jar -wi 5 -i 20 -f 1 ".*ConcurrentCallers.*"; done
+
+for T in 1 2 4 8 16 32; do java -XX:-TieredCompilation -Dbenchmark.pool=shared -Dbenchmark.poolSize=4 -jar target/microbenchmarks.jar -wi 5 -i 20 -f 1 -t $T -rf csv -rff ConcurrentCallers.$T.txt ".*ConcurrentCallers.(intStreamSum|monteCarloPi|probablePrimes)"; done
+
+java -XX:-TieredCompilation -Dbenchmark.pool=isolated -Dbenchmark.poolSize=2 -jar target/microbenchmarks.jar -wi 5 -i 20 -f 1 -tg 8,2,2 ".*ConcurrentCallers.mixed.*"
+
+ */
+
+/**
+ * Many callers each running a parallel pipeline at the same time, as
+ * request threads of a server would, rather than one pipeline alone in the
+ * JVM.  The pipelines are those of {@code IntStreamSum.parallel},
+ * {@code MonteCarloPi.parallel} and {@code ProbablePrimes.parallelRange}.
+ * <p>
+ * Throughput is per caller thread, and the sample time mode reports the
+ * percentiles, including p99, of each caller's latency.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ConcurrentCallers {
+
+    private static int N = Integer.getInteger("benchmark.n", 100000);
+
+    private static long SAMPLES = Long.getLong("benchmark.samples", 1L << 18);
+
+    private static int PRIMES = Integer.getInteger("benchmark.primes", 16);
+
+    private static int BIT_LENGTH = Integer.getInteger("benchmark.bitLength", 128);
+
+    private static String POOL = System.getProperty("benchmark.pool", "common");
+
+    private static int POOL_SIZE = Integer.getInteger("benchmark.poolSize",
+                                                      Runtime.getRuntime().availableProcessors());
+
+    /*
+       The pools a caller's pipeline runs in:
+
+       common   - the common ForkJoinPool, called directly, so the caller
+                  also works on its own pipeline
+       isolated - a ForkJoinPool of benchmark.poolSize per caller
+       shared   - one ForkJoinPool of benchmark.poolSize shared by all
+                  callers, capping the workers of all pipelines together
+
+       A parallel pipeline whose terminal operation is invoked from a worker
+       of a ForkJoinPool runs in that pool, so the isolated and shared pools
+       submit the whole pipeline to the pool and wait for its result.
+     */
+
+    static final class SharedPool {
+        static final ForkJoinPool POOL = new ForkJoinPool(POOL_SIZE);
+    }
+
+    public int[] array;
+    public ForkJoinPool pool;
+
+    @Setup
+    public void setUp() {
+        array = new int[N];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = 3 * i;
+        }
+
+        switch (POOL) {
+            case "common":
+                pool = null;
+                break;
+            case "isolated":
+                pool = new ForkJoinPool(POOL_SIZE);
+                break;
+            case "shared":
+                pool = SharedPool.POOL;
+                break;
+            default:
+                throw new IllegalArgumentException("unknown pool: " + POOL);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (pool != null && pool != SharedPool.POOL) {
+            pool.shutdown();
+        }
+    }
+
+    <T> T call(Callable<T> pipeline) {
+        try {
+            return pool == null ? pipeline.call() : pool.submit(pipeline).get();
+        }
+        catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    int sum() {
+        return Arrays.stream(array).parallel().map(e -> e * 5).sum();
+    }
+
+    static double pi() {
+        long m = SplittableRandoms.generators(SAMPLES)
+                .parallel()
+                .filter(sr -> {
+                    double x = sr.nextDouble(-1, 1);
+                    double y = sr.nextDouble(-1, 1);
+
+                    return x * x + y * y < 1.0;
+                })
+                .count();
+
+        double pi = (4.0 * m) / SAMPLES;
+        return pi;
+    }
+
+    static List<BigInteger> primes() {
+        return IntStream.range(0, PRIMES)
+                .parallel()
+                .mapToObj(i -> BigInteger.probablePrime(BIT_LENGTH, ThreadLocalRandom.current()))
+                .collect(toList());
+    }
+
+    // Callers all running the same pipeline
+
+    @GenerateMicroBenchmark
+    @Threads(16)
+    public int intStreamSum() {
+        return call(this::sum);
+    }
+
+    @GenerateMicroBenchmark
+    @Threads(16)
+    public double monteCarloPi() {
+        return call(ConcurrentCallers::pi);
+    }
+
+    @GenerateMicroBenchmark
+    @Threads(16)
+    public List<BigInteger> probablePrimes() {
+        return call(ConcurrentCallers::primes);
+    }
+
+    // Callers running a mix of cheap and expensive pipelines
+
+    @GenerateMicroBenchmark
+    @Group("mixed")
+    @GroupThreads(8)
+    public int mixedIntStreamSum() {
+        return call(this::sum);
+    }
+
+    @GenerateMicroBenchmark
+    @Group("mixed")
+    @GroupThreads(4)
+    public double mixedMonteCarloPi() {
+        return call(ConcurrentCallers::pi);
+    }
+
+    @GenerateMicroBenchmark
+    @Group("mixed")
+    @GroupThreads(4)
+    public List<BigInteger> mixedProbablePrimes() {
+        return call(ConcurrentCallers::primes);
+    }
+}
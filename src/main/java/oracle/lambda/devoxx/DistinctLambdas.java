@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package oracle.lambda.devoxx;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Creates lambdas that behave the same but are each of a distinct class.
+ * <p>
+ * A lambda expression evaluated in a loop yields instances of one class, so
+ * cannot be used to model many call site receivers. Linking a lambda
+ * directly with the {@code LambdaMetafactory} spins a new class on each
+ * call, as would a new lambda expression in the source.
+ */
+final class DistinctLambdas {
+
+    private DistinctLambdas() {
+    }
+
+    static int times5(int e) {
+        return e * 5;
+    }
+
+    /**
+     * Returns {@code k} mappers, {@code e -> e * 5}, each of a distinct class.
+     */
+    static IntUnaryOperator[] mappers(int k) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodType type = MethodType.methodType(int.class, int.class);
+        IntUnaryOperator[] mappers = new IntUnaryOperator[k];
+        try {
+            for (int i = 0; i < k; i++) {
+                CallSite cs = LambdaMetafactory.metafactory(
+                        lookup, "applyAsInt", MethodType.methodType(IntUnaryOperator.class),
+                        type, lookup.findStatic(DistinctLambdas.class, "times5", type), type);
+                mappers[i] = (IntUnaryOperator) cs.getTarget().invokeExact();
+            }
+        }
+        catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+        return mappers;
+    }
+}
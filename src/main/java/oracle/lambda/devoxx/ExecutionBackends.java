@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package oracle.lambda.devoxx;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.GenerateMicroBenchmark;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+
+for B in common forkjoin fixed; do for P in 1 2 4 8; do java -XX:-TieredCompilation -Dbenchmark.backend=$B -Dbenchmark.parallelism=$P -Djava.util.concurrent.ForkJoinPool.common.parallelism=$P -jar target/microbenchmarks.jar -wi 5 -i 20 -f 1 ".*ExecutionBackends.*"; done; done
+
+java -XX:-TieredCompilation -Dbenchmark.backend=fixed -Dbenchmark.blockMicros=500 -jar target/microbenchmarks.jar -wi 5 -i 20 -f 1 ".*ExecutionBackends.*"
+
+ */
+
+@State
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ExecutionBackends {
+
+    private static int PRIMES = Integer.getInteger("benchmark.primes", 100);
+
+    private static int BIT_LENGTH = Integer.getInteger("benchmark.bitLength", 128);
+
+    private static long SAMPLES = Long.getLong("benchmark.samples", 1L << 24);
+
+    private static int LEAVES = Integer.getInteger("benchmark.leaves", 64);
+
+    private static String BACKEND = System.getProperty("benchmark.backend", "common");
+
+    private static int PARALLELISM = Integer.getInteger("benchmark.parallelism",
+                                                        Runtime.getRuntime().availableProcessors());
+
+    private static long BLOCK_NANOS = TimeUnit.MICROSECONDS.toNanos(Long.getLong("benchmark.blockMicros", 0L));
+
+    /*
+       The backends run the same leaf tasks and wait for all of them, failing
+       if any leaf fails, with the other leaves cancelled:
+
+       common   - the common ForkJoinPool, sized with
+                  -Djava.util.concurrent.ForkJoinPool.common.parallelism
+       forkjoin - a dedicated ForkJoinPool of the given parallelism
+       fixed    - a fixed pool of the given number of platform threads
+
+       Virtual threads and structured concurrency are not available on the
+       Java 8 platform targeted here. On the fork/join backends the simulated
+       blocking step is a ForkJoinPool.ManagedBlocker, so the pool may add
+       workers to compensate for blocked ones, as it would for virtual threads
+       parked in blocking calls.
+     */
+
+    static final class Backend {
+        final ExecutorService executor;
+        final boolean shared;
+
+        Backend(String name, int parallelism) {
+            switch (name) {
+                case "common":
+                    executor = ForkJoinPool.commonPool();
+                    shared = true;
+                    break;
+                case "forkjoin":
+                    executor = new ForkJoinPool(parallelism);
+                    shared = false;
+                    break;
+                case "fixed":
+                    executor = Executors.newFixedThreadPool(parallelism, r -> {
+                        Thread t = new Thread(r);
+                        t.setDaemon(true);
+                        return t;
+                    });
+                    shared = false;
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown backend: " + name);
+            }
+        }
+
+        <T> List<T> invokeAll(List<Callable<T>> leaves) {
+            List<Future<T>> fs = new ArrayList<>(leaves.size());
+            for (Callable<T> leaf : leaves) {
+                fs.add(executor.submit(leaf));
+            }
+
+            List<T> rs = new ArrayList<>(fs.size());
+            try {
+                for (Future<T> f : fs) {
+                    rs.add(f.get());
+                }
+            }
+            catch (InterruptedException | ExecutionException e) {
+                for (Future<T> f : fs) {
+                    f.cancel(true);
+                }
+                throw new IllegalStateException(e);
+            }
+            return rs;
+        }
+
+        void shutdown() {
+            if (!shared) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    static void block() {
+        if (BLOCK_NANOS <= 0)
+            return;
+
+        long deadline = System.nanoTime() + BLOCK_NANOS;
+        ForkJoinPool.ManagedBlocker blocker = new ForkJoinPool.ManagedBlocker() {
+            public boolean block() {
+                long remaining = deadline - System.nanoTime();
+                if (remaining > 0) {
+                    LockSupport.parkNanos(remaining);
+                }
+                return isReleasable();
+            }
+
+            public boolean isReleasable() {
+                return System.nanoTime() - deadline >= 0;
+            }
+        };
+        try {
+            ForkJoinPool.managedBlock(blocker);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public Backend backend;
+
+    @Setup
+    public void setUp() {
+        backend = new Backend(BACKEND, PARALLELISM);
+    }
+
+    @TearDown
+    public void tearDown() {
+        backend.shutdown();
+    }
+
+    @GenerateMicroBenchmark
+    public List<BigInteger> primes() {
+        List<Callable<List<BigInteger>>> leaves = new ArrayList<>(LEAVES);
+        for (int l = 0; l < LEAVES; l++) {
+            int from = (int) ((long) PRIMES * l / LEAVES), to = (int) ((long) PRIMES * (l + 1) / LEAVES);
+            leaves.add(() -> {
+                block();
+                List<BigInteger> pps = new ArrayList<>(to - from);
+                for (int i = from; i < to; i++) {
+                    pps.add(BigInteger.probablePrime(BIT_LENGTH, ThreadLocalRandom.current()));
+                }
+                return pps;
+            });
+        }
+
+        List<BigInteger> pps = new ArrayList<>(PRIMES);
+        for (List<BigInteger> l : backend.invokeAll(leaves)) {
+            pps.addAll(l);
+        }
+        return pps;
+    }
+
+    @GenerateMicroBenchmark
+    public double monteCarlo() {
+        SplittableRandom sr = new SplittableRandom();
+        List<Callable<Long>> leaves = new ArrayList<>(LEAVES);
+        for (int l = 0; l < LEAVES; l++) {
+            long n = SAMPLES * (l + 1) / LEAVES - SAMPLES * l / LEAVES;
+            SplittableRandom lr = sr.split();
+            leaves.add(() -> {
+                block();
+                return MonteCarloPi.scalarHits(lr, n);
+            });
+        }
+
+        long m = 0;
+        for (long h : backend.invokeAll(leaves)) {
+            m += h;
+        }
+
+        double pi = (4.0 * m) / SAMPLES;
+        return pi;
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package oracle.lambda.devoxx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * A builder of {@code IntStream} pipelines over an {@code int[]} that fuses
+ * consecutive {@code map} stages into one mapper, and consecutive
+ * {@code filter} stages into one predicate, before the stream is built.
+ * <p>
+ * In a chain such as {@code .map(mapper1).map(mapper2).map(mapper3)} every
+ * map stage calls its mapper from the same call site in the stream
+ * implementation, so that site sees every mapper class and becomes
+ * megamorphic. A fused mapper is an instance of a class specialized to the
+ * number of mappers it fuses, calling each mapper from its own call site,
+ * so each of those call sites sees only the mappers used at that position.
+ * <p>
+ * Those call sites are shared by every pipeline fusing the same number of
+ * mappers. They stay monomorphic in a benchmark fork that runs one pipeline
+ * shape, but in an application with many shapes each position sees the
+ * mappers of all of them and becomes megamorphic again. Fusion only removes
+ * the sharing between positions of one chain, not between chains.
+ */
+final class FusedIntPipeline {
+
+    private final int[] array;
+    private boolean parallel;
+    private final List<Object> stages = new ArrayList<>();
+
+    private FusedIntPipeline(int[] array) {
+        this.array = array;
+    }
+
+    static FusedIntPipeline of(int[] array) {
+        return new FusedIntPipeline(array);
+    }
+
+    FusedIntPipeline parallel() {
+        parallel = true;
+        return this;
+    }
+
+    FusedIntPipeline sequential() {
+        parallel = false;
+        return this;
+    }
+
+    FusedIntPipeline map(IntUnaryOperator mapper) {
+        if (mapper == null) throw new NullPointerException();
+        last(MapStage.class).mappers.add(mapper);
+        return this;
+    }
+
+    FusedIntPipeline filter(IntPredicate predicate) {
+        if (predicate == null) throw new NullPointerException();
+        last(FilterStage.class).predicates.add(predicate);
+        return this;
+    }
+
+    int sum() {
+        return stream().sum();
+    }
+
+    int reduce(int identity, IntBinaryOperator op) {
+        return stream().reduce(identity, op);
+    }
+
+    IntStream stream() {
+        IntStream s = Arrays.stream(array);
+        if (parallel) {
+            s = s.parallel();
+        }
+        for (Object stage : stages) {
+            if (stage instanceof MapStage) {
+                s = s.map(fuse(((MapStage) stage).mappers));
+            }
+            else {
+                s = s.filter(fuseAll(((FilterStage) stage).predicates));
+            }
+        }
+        return s;
+    }
+
+    private <S> S last(Class<S> type) {
+        Object stage = stages.isEmpty() ? null : stages.get(stages.size() - 1);
+        if (!type.isInstance(stage)) {
+            stage = (type == MapStage.class) ? new MapStage() : new FilterStage();
+            stages.add(stage);
+        }
+        return type.cast(stage);
+    }
+
+    private static final class MapStage {
+        final List<IntUnaryOperator> mappers = new ArrayList<>();
+    }
+
+    private static final class FilterStage {
+        final List<IntPredicate> predicates = new ArrayList<>();
+    }
+
+    /**
+     * Fuses mappers, applied in list order, into one mapper.
+     */
+    static IntUnaryOperator fuse(List<IntUnaryOperator> mappers) {
+        switch (mappers.size()) {
+            case 0:
+                return e -> e;
+            case 1:
+                return mappers.get(0);
+            case 2:
+                return new Fused2(mappers.get(0), mappers.get(1));
+            case 3:
+                return new Fused3(mappers.get(0), mappers.get(1), mappers.get(2));
+            case 4:
+                return new Fused4(mappers.get(0), mappers.get(1), mappers.get(2), mappers.get(3));
+            default:
+                List<IntUnaryOperator> fused = new ArrayList<>();
+                for (int i = 0; i < mappers.size(); i += 4) {
+                    fused.add(fuse(mappers.subList(i, Math.min(i + 4, mappers.size()))));
+                }
+                return fuse(fused);
+        }
+    }
+
+    /**
+     * Fuses predicates into one predicate that holds if all of them hold,
+     * testing them in list order.
+     */
+    static IntPredicate fuseAll(List<IntPredicate> predicates) {
+        switch (predicates.size()) {
+            case 0:
+                return e -> true;
+            case 1:
+                return predicates.get(0);
+            case 2:
+                return new All2(predicates.get(0), predicates.get(1));
+            case 3:
+                return new All3(predicates.get(0), predicates.get(1), predicates.get(2));
+            case 4:
+                return new All4(predicates.get(0), predicates.get(1), predicates.get(2), predicates.get(3));
+            default:
+                List<IntPredicate> fused = new ArrayList<>();
+                for (int i = 0; i < predicates.size(); i += 4) {
+                    fused.add(fuseAll(predicates.subList(i, Math.min(i + 4, predicates.size()))));
+                }
+                return fuseAll(fused);
+        }
+    }
+
+    static final class Fused2 implements IntUnaryOperator {
+        final IntUnaryOperator m1, m2;
+
+        Fused2(IntUnaryOperator m1, IntUnaryOperator m2) {
+            this.m1 = m1;
+            this.m2 = m2;
+        }
+
+        public int applyAsInt(int e) {
+            return m2.applyAsInt(m1.applyAsInt(e));
+        }
+    }
+
+    static final class Fused3 implements IntUnaryOperator {
+        final IntUnaryOperator m1, m2, m3;
+
+        Fused3(IntUnaryOperator m1, IntUnaryOperator m2, IntUnaryOperator m3) {
+            this.m1 = m1;
+            this.m2 = m2;
+            this.m3 = m3;
+        }
+
+        public int applyAsInt(int e) {
+            return m3.applyAsInt(m2.applyAsInt(m1.applyAsInt(e)));
+        }
+    }
+
+    static final class Fused4 implements IntUnaryOperator {
+        final IntUnaryOperator m1, m2, m3, m4;
+
+        Fused4(IntUnaryOperator m1, IntUnaryOperator m2, IntUnaryOperator m3, IntUnaryOperator m4) {
+            this.m1 = m1;
+            this.m2 = m2;
+            this.m3 = m3;
+            this.m4 = m4;
+        }
+
+        public int applyAsInt(int e) {
+            return m4.applyAsInt(m3.applyAsInt(m2.applyAsInt(m1.applyAsInt(e))));
+        }
+    }
+
+    static final class All2 implements IntPredicate {
+        final IntPredicate p1, p2;
+
+        All2(IntPredicate p1, IntPredicate p2) {
+            this.p1 = p1;
+            this.p2 = p2;
+        }
+
+        public boolean test(int e) {
+            return p1.test(e) && p2.test(e);
+        }
+    }
+
+    static final class All3 implements IntPredicate {
+        final IntPredicate p1, p2, p3;
+
+        All3(IntPredicate p1, IntPredicate p2, IntPredicate p3) {
+            this.p1 = p1;
+            this.p2 = p2;
+            this.p3 = p3;
+        }
+
+        public boolean test(int e) {
+            return p1.test(e) && p2.test(e) && p3.test(e);
+        }
+    }
+
+    static final class All4 implements IntPredicate {
+        final IntPredicate p1, p2, p3, p4;
+
+        All4(IntPredicate p1, IntPredicate p2, IntPredicate p3, IntPredicate p4) {
+            this.p1 = p1;
+            this.p2 = p2;
+            this.p3 = p3;
+            this.p4 = p4;
+        }
+
+        public boolean test(int e) {
+            return p1.test(e) && p2.test(e) && p3.test(e) && p4.test(e);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package oracle.lambda.devoxx;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+
+java -cp target/microbenchmarks.jar oracle.lambda.devoxx.InliningMatrix IntStreamSum
+
+java -Dinlining.levels=9,11,15 -Dinlining.tiered=false -Dinlining.jmhArgs="-wi 5 -i 10 -f 1" -cp target/microbenchmarks.jar oracle.lambda.devoxx.InliningMatrix ".*IntStreamSum.seq.*"
+
+ */
+
+/**
+ * Runs benchmarks under a matrix of JIT inlining settings, capturing the
+ * inlining decisions of each run, and summarises the stream implementation
+ * frames that failed to inline next to each score.
+ * <p>
+ * The matrix is the product of
+ * <ul>
+ * <li>{@code MaxInlineLevel}, the system property {@code inlining.levels},
+ *     defaulting to 9 (the HotSpot default) and 11;</li>
+ * <li>tiered compilation on and off, {@code inlining.tiered};</li>
+ * <li>no exclusions, and exclusions from compilation of the
+ *     {@code IntPipeline}, {@code AbstractPipeline} and {@code ReduceOps}
+ *     methods of a sum, those commented out in the {@code hotspot_compiler}
+ *     file, written to {@code <name>.excludes}. A file of other exclusions,
+ *     in {@code CompileCommandFile} syntax, may be given with
+ *     {@code inlining.excludes}.</li>
+ * </ul>
+ * Each cell runs JMH in its own JVM with {@code -XX:+PrintInlining}, its
+ * output (including that of the forks, which JMH echoes) kept in
+ * {@code <name>.<cell>.log} next to the {@code <name>.<cell>.csv} results.
+ * The summary, {@code <name>.inlining.csv}, has one row per benchmark and
+ * cell, with the score and the failed {@code java.util.stream} inlining
+ * decisions, callee and reason, ordered by frequency. The exit status is
+ * non-zero if any cell failed.
+ */
+public final class InliningMatrix {
+
+    // e.g. "@ 17   java.util.stream.IntPipeline::sum (13 bytes)   inlining too deep"
+    static final Pattern INLINE = Pattern.compile("@\\s*\\d+\\s+(\\S+::\\S+)\\s+\\(\\d+ bytes\\)\\s+(.*)$");
+
+    static final Pattern BENCHMARK = Pattern.compile("^# (?:Running|Benchmark):\\s+(\\S+)");
+
+    static final Pattern FAILURE = Pattern.compile(
+            "too big|too deep|too large|not inline|never executed|no static binding|" +
+            "disallowed|failed|unloaded|recursive|callee is|already compiled|not an accessor|" +
+            "exception|call site not reached|not compilable|low call site frequency");
+
+    // The stream implementation methods of an IntStream sum
+    static final List<String> EXCLUDES = Arrays.asList(
+            "exclude java/util/stream/IntPipeline sum",
+            "exclude java/util/stream/IntPipeline reduce",
+            "exclude java/util/stream/AbstractPipeline evaluate",
+            "exclude java/util/stream/ReduceOps$ReduceOp evaluateSequential",
+            "exclude java/util/stream/AbstractPipeline wrapAndCopyInto",
+            "exclude java/util/stream/AbstractPipeline copyInto");
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            System.err.println("usage: InliningMatrix <benchmark>");
+            System.exit(2);
+        }
+        String test = args[0];
+        String name = test.replaceAll("[^A-Za-z0-9]+", "");
+        Path out = Paths.get(System.getProperty("inlining.out", "."));
+        Files.createDirectories(out);
+
+        List<String> levels = Arrays.asList(System.getProperty("inlining.levels", "9,11").split(","));
+        List<String> tiered = Arrays.asList(System.getProperty("inlining.tiered", "true,false").split(","));
+        String excludesFile = System.getProperty("inlining.excludes");
+        Path excludes;
+        if (excludesFile != null) {
+            excludes = Paths.get(excludesFile);
+            if (!Files.exists(excludes))
+                throw new IllegalArgumentException("no such exclusions file: " + excludes);
+        }
+        else {
+            excludes = Files.write(out.resolve(name + ".excludes"), EXCLUDES, StandardCharsets.UTF_8);
+        }
+        List<String> failedCells = new ArrayList<>();
+
+        try (BufferedWriter summary = Files.newBufferedWriter(out.resolve(name + ".inlining.csv"),
+                                                              StandardCharsets.UTF_8)) {
+            summary.write("\"Benchmark\",\"Cell\",\"Score\",\"Score Error\",\"Unit\",\"Failed stream inlining\"");
+            summary.newLine();
+
+            for (String level : levels) {
+                for (String t : tiered) {
+                    for (boolean exclude : new boolean[] { false, true }) {
+                        String cell = "L" + level.trim() + (Boolean.parseBoolean(t.trim()) ? ".tiered" : ".c2")
+                                      + (exclude ? ".excludes" : "");
+                        List<String> command = Sweep.javaCommand(System.getProperty("inlining.jvmArgs", ""));
+                        command.add("-XX:MaxInlineLevel=" + level.trim());
+                        command.add(Boolean.parseBoolean(t.trim()) ? "-XX:+TieredCompilation" : "-XX:-TieredCompilation");
+                        command.add("-XX:+UnlockDiagnosticVMOptions");
+                        command.add("-XX:+PrintInlining");
+                        if (exclude) {
+                            command.add("-XX:CompileCommandFile=" + excludes);
+                        }
+                        command.add("-jar");
+                        command.add(Sweep.jar());
+                        command.addAll(Sweep.words(System.getProperty("inlining.jmhArgs", "-f 1")));
+                        Path csv = out.resolve(name + "." + cell + ".csv");
+                        Path log = out.resolve(name + "." + cell + ".log");
+                        command.addAll(Arrays.asList("-rf", "csv", "-rff", csv.toString(), ".*" + test + ".*"));
+
+                        System.out.println(String.join(" ", command));
+                        int status = new ProcessBuilder(command)
+                                .redirectErrorStream(true)
+                                .redirectOutput(log.toFile())
+                                .start().waitFor();
+                        if (status != 0) {
+                            System.err.println("cell " + cell + " failed with exit status " + status + ", see " + log);
+                            failedCells.add(cell);
+                            continue;
+                        }
+
+                        Map<String, Map<String, Integer>> failures = failures(log);
+                        for (JmhResults.Result r : JmhResults.read(csv)) {
+                            Map<String, Integer> fs = failures.getOrDefault(r.benchmark, new TreeMap<>());
+                            summary.write(String.format(Locale.ROOT, "\"%s\",\"%s\",%s,%s,\"%s\",\"%s\"",
+                                                        r.benchmark, cell, Double.toString(r.score),
+                                                        Double.toString(r.error), r.unit, describe(fs)));
+                            summary.newLine();
+                        }
+                        summary.flush();
+                    }
+                }
+            }
+        }
+
+        if (!failedCells.isEmpty()) {
+            System.err.println(failedCells.size() + " cell(s) failed: " + String.join(", ", failedCells));
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Returns, per benchmark, the number of times each failed inlining
+     * decision of a stream implementation method, callee and reason, was
+     * printed while that benchmark ran.
+     */
+    static Map<String, Map<String, Integer>> failures(Path log) throws IOException {
+        Map<String, Map<String, Integer>> failures = new LinkedHashMap<>();
+        Map<String, Integer> current = new TreeMap<>();
+        for (String line : Files.readAllLines(log, StandardCharsets.ISO_8859_1)) {
+            Matcher b = BENCHMARK.matcher(line);
+            if (b.find()) {
+                current = failures.computeIfAbsent(b.group(1), k -> new TreeMap<>());
+                continue;
+            }
+            Matcher m = INLINE.matcher(line);
+            if (m.find() && m.group(1).startsWith("java.util.stream.") && FAILURE.matcher(m.group(2)).find()) {
+                current.merge(m.group(1) + " (" + m.group(2).trim() + ")", 1, Integer::sum);
+            }
+        }
+        return failures;
+    }
+
+    private static String describe(Map<String, Integer> fs) {
+        List<Map.Entry<String, Integer>> es = new ArrayList<>(fs.entrySet());
+        es.sort((x, y) -> y.getValue() - x.getValue());
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Integer> e : es) {
+            if (sb.length() > 0) {
+                sb.append("; ");
+            }
+            sb.append(e.getKey().replace('"', '\'')).append(" x").append(e.getValue());
+        }
+        return sb.toString();
+    }
+}
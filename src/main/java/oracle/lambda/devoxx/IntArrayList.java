@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package oracle.lambda.devoxx;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A resizable list of ints, stored unboxed in an {@code int[]}.
+ */
+public final class IntArrayList {
+
+    private int[] elements;
+    private int size;
+
+    public IntArrayList() {
+        this(10);
+    }
+
+    public IntArrayList(int initialCapacity) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("capacity must be non-negative");
+        elements = new int[initialCapacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void add(int e) {
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, Math.max(10, size + (size >> 1)));
+        }
+        elements[size++] = e;
+    }
+
+    public int get(int index) {
+        if (index >= size)
+            throw new IndexOutOfBoundsException("index " + index + " out of bounds for size " + size);
+        return elements[index];
+    }
+
+    public int set(int index, int e) {
+        int old = get(index);
+        elements[index] = e;
+        return old;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(elements, size);
+    }
+
+    public Spliterator.OfInt spliterator() {
+        return new IntArrayListSpliterator(elements, 0, size);
+    }
+
+    public IntStream stream() {
+        return StreamSupport.intStream(spliterator(), false);
+    }
+
+    /**
+     * Splits the list's elements, as of the time the spliterator was created,
+     * in halves.
+     */
+    private static final class IntArrayListSpliterator implements Spliterator.OfInt {
+
+        final int[] elements;
+        int index;
+        final int fence;
+
+        IntArrayListSpliterator(int[] elements, int index, int fence) {
+            this.elements = elements;
+            this.index = index;
+            this.fence = fence;
+        }
+
+        public IntArrayListSpliterator trySplit() {
+            int i = index, m = (i + fence) >>> 1;
+            return (m <= i) ? null :
+                   new IntArrayListSpliterator(elements, i, index = m);
+        }
+
+        public long estimateSize() {
+            return fence - index;
+        }
+
+        public int characteristics() {
+            return (Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED);
+        }
+
+        public boolean tryAdvance(IntConsumer consumer) {
+            if (consumer == null) throw new NullPointerException();
+            int i = index;
+            if (i < fence) {
+                consumer.accept(elements[i]);
+                index = i + 1;
+                return true;
+            }
+            return false;
+        }
+
+        public void forEachRemaining(IntConsumer consumer) {
+            if (consumer == null) throw new NullPointerException();
+            int[] a = elements;
+            int i = index, f = fence;
+            index = f;
+            for (; i < f; i++) {
+                consumer.accept(a[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package oracle.lambda.devoxx;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Sums mapped elements of an {@code int[]}, choosing between sequential
+ * and parallel evaluation, and the size of the leaves of a parallel
+ * evaluation, from a simple cost model.
+ * <p>
+ * The model is given the cost of mapping and summing one element. If the
+ * total cost is below what it costs to fork and join the work, or only one
+ * worker is available, the sum is computed sequentially. Otherwise the
+ * array is split into leaves costing at least a minimum amount of work,
+ * and into at least four leaves per worker so that work stealing can
+ * balance the load.
+ * <p>
+ * Split points are rounded to a granularity of elements, given in bytes,
+ * counted from index 0. This is index granularity only: element 0 sits
+ * just after the array header, and the array may be moved by the garbage
+ * collector, so leaves are not aligned to cache lines or pages in memory.
+ * It only keeps the size of each leaf, other than the last, a whole number
+ * of lines, or pages, worth of elements.
+ */
+final class IntArrayReducer {
+
+    // Approximate cost of forking a task and waking a worker to steal it
+    static final double FORK_JOIN_NANOS = 20_000;
+
+    // Minimum cost of a leaf, so that task overhead is amortized
+    static final double MIN_LEAF_NANOS = 5_000;
+
+    private final ForkJoinPool pool;
+    private final int granularity;
+    private final double elementNanos;
+
+    /**
+     * @param pool the pool to evaluate in parallel on
+     * @param granularityBytes the granularity, in bytes of elements, to round split points to
+     * @param elementNanos the cost, in nanoseconds, of one element
+     */
+    IntArrayReducer(ForkJoinPool pool, int granularityBytes, double elementNanos) {
+        if (granularityBytes < Integer.BYTES || Integer.bitCount(granularityBytes) != 1)
+            throw new IllegalArgumentException("granularity must be a power of two no less than 4");
+        if (!(elementNanos > 0))
+            throw new IllegalArgumentException("cost must be positive");
+        this.pool = pool;
+        this.granularity = granularityBytes / Integer.BYTES;
+        this.elementNanos = elementNanos;
+    }
+
+    boolean isParallel(int n) {
+        return pool.getParallelism() > 1 && n * elementNanos > FORK_JOIN_NANOS;
+    }
+
+    int leafSize(int n) {
+        long leaf = Math.max((long) Math.ceil(MIN_LEAF_NANOS / elementNanos),
+                             n / (4L * pool.getParallelism()));
+        // Round up to the granularity
+        return (int) Math.min(Integer.MAX_VALUE, (leaf + granularity - 1) & -granularity);
+    }
+
+    int sum(int[] a, IntUnaryOperator mapper) {
+        int n = a.length;
+        return isParallel(n)
+               ? pool.invoke(new SumTask(a, mapper, 0, n, leafSize(n), granularity))
+               : sum(a, mapper, 0, n);
+    }
+
+    static int sum(int[] a, IntUnaryOperator mapper, int from, int to) {
+        int r = 0;
+        for (int i = from; i < to; i++) {
+            r += mapper.applyAsInt(a[i]);
+        }
+        return r;
+    }
+
+    private static final class SumTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        final int[] a;
+        final IntUnaryOperator mapper;
+        final int from, to, leafSize, granularity;
+
+        SumTask(int[] a, IntUnaryOperator mapper, int from, int to, int leafSize, int granularity) {
+            this.a = a;
+            this.mapper = mapper;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+            this.granularity = granularity;
+        }
+
+        @Override
+        protected Integer compute() {
+            int m = ((from + to) >>> 1) & -granularity;
+            if (to - from <= leafSize || m <= from) {
+                return sum(a, mapper, from, to);
+            }
+            SumTask left = new SumTask(a, mapper, from, m, leafSize, granularity);
+            left.fork();
+            int r = new SumTask(a, mapper, m, to, leafSize, granularity).compute();
+            return left.join() + r;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package oracle.lambda.devoxx;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Specializes the evaluation of a chain of {@code IntUnaryOperator}s,
+ * followed by a sum or reduction, over a slice of an {@code int[]}.
+ * <p>
+ * Each distinct chain shape, the sequence of operator classes, is evaluated
+ * by its own class: a copy of {@link Template} defined by a fresh class
+ * loader. Profiles are kept per class, so the call sites in each copy only
+ * ever see the operators of one shape and stay monomorphic however many
+ * shapes are in use in the process. The copies are held in a bounded cache,
+ * least recently used shapes being evicted, at which point a copy may be
+ * unloaded along with its class loader.
+ * <p>
+ * Hidden classes ({@code Lookup.defineHiddenClass}) are not available on
+ * the Java 8 platform targeted here, so a class loader per copy is used
+ * instead; copying the template byte code verbatim means no byte code
+ * needs to be generated.
+ */
+final class IntChainSpecializer {
+
+    /**
+     * The maximum number of operators a kernel applies from distinct call
+     * sites. Longer chains have their trailing operators fused with
+     * {@link FusedIntPipeline#fuse}, whose call sites are shared by every
+     * chain so fused, and so may be megamorphic where specialized kernels
+     * are not.
+     */
+    static final int MAX_LENGTH = 8;
+
+    public interface Kernel {
+        Kernel bind(IntUnaryOperator[] chain, IntBinaryOperator op);
+
+        int sum(int[] a, int from, int to);
+
+        int reduce(int[] a, int from, int to, int identity);
+    }
+
+    private static final String TEMPLATE_NAME = Template.class.getName();
+
+    private static final byte[] TEMPLATE_BYTES = templateBytes();
+
+    private final Map<List<Class<?>>, Kernel> kernels;
+
+    IntChainSpecializer(int maxShapes) {
+        if (maxShapes < 1)
+            throw new IllegalArgumentException("maximum number of shapes must be positive");
+        this.kernels = new LinkedHashMap<List<Class<?>>, Kernel>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Class<?>>, Kernel> eldest) {
+                return size() > maxShapes;
+            }
+        };
+    }
+
+    /**
+     * Returns a kernel applying the chain of operators, in order, to each
+     * element, and reducing the results with the given operator.
+     */
+    Kernel kernel(IntUnaryOperator[] chain, IntBinaryOperator op) {
+        if (chain.length > MAX_LENGTH) {
+            IntUnaryOperator[] c = Arrays.copyOf(chain, MAX_LENGTH);
+            c[MAX_LENGTH - 1] = FusedIntPipeline.fuse(Arrays.asList(chain).subList(MAX_LENGTH - 1, chain.length));
+            chain = c;
+        }
+
+        List<Class<?>> shape = new ArrayList<>(chain.length + 1);
+        for (IntUnaryOperator o : chain) {
+            shape.add(o.getClass());
+        }
+        shape.add(op.getClass());
+
+        Kernel prototype;
+        synchronized (kernels) {
+            prototype = kernels.get(shape);
+            if (prototype == null) {
+                prototype = newPrototype();
+                kernels.put(shape, prototype);
+            }
+        }
+        return prototype.bind(chain, op);
+    }
+
+    Kernel kernel(IntUnaryOperator... chain) {
+        return kernel(chain, Integer::sum);
+    }
+
+    int shapes() {
+        synchronized (kernels) {
+            return kernels.size();
+        }
+    }
+
+    /**
+     * Sums an array with a kernel in parallel on the common pool.
+     */
+    static int parallelSum(Kernel k, int[] a) {
+        int threshold = Math.max(1, a.length / (ForkJoinPool.getCommonPoolParallelism() << 2));
+        return ForkJoinPool.commonPool().invoke(new SumTask(k, a, 0, a.length, threshold));
+    }
+
+    private static final class SumTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        final Kernel k;
+        final int[] a;
+        final int from, to, threshold;
+
+        SumTask(Kernel k, int[] a, int from, int to, int threshold) {
+            this.k = k;
+            this.a = a;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (to - from <= threshold) {
+                return k.sum(a, from, to);
+            }
+            int m = (from + to) >>> 1;
+            SumTask left = new SumTask(k, a, from, m, threshold);
+            left.fork();
+            int r = new SumTask(k, a, m, to, threshold).compute();
+            return left.join() + r;
+        }
+    }
+
+    private static Kernel newPrototype() {
+        try {
+            Class<?> c = new CloningLoader(IntChainSpecializer.class.getClassLoader()).loadClass(TEMPLATE_NAME);
+            return (Kernel) c.getConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] templateBytes() {
+        String resource = TEMPLATE_NAME.substring(TEMPLATE_NAME.lastIndexOf('.') + 1) + ".class";
+        try (InputStream in = IntChainSpecializer.class.getResourceAsStream(resource)) {
+            if (in == null)
+                throw new IllegalStateException("class file not found: " + resource);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] b = new byte[4096];
+            for (int n; (n = in.read(b)) > 0; ) {
+                out.write(b, 0, n);
+            }
+            return out.toByteArray();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Defines its own copy of the template class, delegating for all
+     * other classes.
+     */
+    private static final class CloningLoader extends ClassLoader {
+
+        CloningLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.equals(TEMPLATE_NAME)) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> c = findLoadedClass(name);
+                if (c == null) {
+                    c = defineClass(name, TEMPLATE_BYTES, 0, TEMPLATE_BYTES.length);
+                }
+                return c;
+            }
+        }
+    }
+
+    /**
+     * The kernel template, copied per chain shape. The operators are applied
+     * from distinct call sites; the tests on length are profiled per copy,
+     * so the branches not taken by a shape are not compiled.
+     */
+    public static final class Template implements Kernel {
+        final IntUnaryOperator o0, o1, o2, o3, o4, o5, o6, o7;
+        final int length;
+        final IntBinaryOperator op;
+
+        public Template() {
+            this(new IntUnaryOperator[0], Integer::sum);
+        }
+
+        Template(IntUnaryOperator[] chain, IntBinaryOperator op) {
+            IntUnaryOperator[] c = Arrays.copyOf(chain, MAX_LENGTH);
+            this.o0 = c[0];
+            this.o1 = c[1];
+            this.o2 = c[2];
+            this.o3 = c[3];
+            this.o4 = c[4];
+            this.o5 = c[5];
+            this.o6 = c[6];
+            this.o7 = c[7];
+            this.length = chain.length;
+            this.op = op;
+        }
+
+        public Kernel bind(IntUnaryOperator[] chain, IntBinaryOperator op) {
+            return new Template(chain, op);
+        }
+
+        public int sum(int[] a, int from, int to) {
+            int r = 0;
+            for (int i = from; i < to; i++) {
+                r += apply(a[i]);
+            }
+            return r;
+        }
+
+        public int reduce(int[] a, int from, int to, int identity) {
+            int r = identity;
+            for (int i = from; i < to; i++) {
+                r = op.applyAsInt(r, apply(a[i]));
+            }
+            return r;
+        }
+
+        private int apply(int e) {
+            int n = length;
+            if (n == 0) return e;
+            e = o0.applyAsInt(e);
+            if (n == 1) return e;
+            e = o1.applyAsInt(e);
+            if (n == 2) return e;
+            e = o2.applyAsInt(e);
+            if (n == 3) return e;
+            e = o3.applyAsInt(e);
+            if (n == 4) return e;
+            e = o4.applyAsInt(e);
+            if (n == 5) return e;
+            e = o5.applyAsInt(e);
+            if (n == 6) return e;
+            e = o6.applyAsInt(e);
+            if (n == 7) return e;
+            return o7.applyAsInt(e);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package oracle.lambda.devoxx;
+
+import java.util.Spliterator;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A map of int keys to int values, stored unboxed in an open addressing
+ * hash table with linear probing.
+ * <p>
+ * A key of 0 marks a free slot in the table, so the mapping for the key 0,
+ * if any, is held separately.
+ */
+public final class IntIntHashMap {
+
+    private static final int FREE = 0;
+
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    public IntIntHashMap() {
+        this(16);
+    }
+
+    public IntIntHashMap(int expectedSize) {
+        if (expectedSize < 0)
+            throw new IllegalArgumentException("size must be non-negative");
+        // Keep the load factor at most 1/2
+        int capacity = Integer.highestOneBit(Math.max(2, expectedSize) * 2 - 1) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int slot(int key) {
+        int i = hash(key) & mask;
+        for (int k; (k = keys[i]) != FREE && k != key; i = (i + 1) & mask) {
+        }
+        return i;
+    }
+
+    public boolean containsKey(int key) {
+        return (key == FREE) ? hasZeroKey : keys[slot(key)] == key;
+    }
+
+    public int get(int key, int defaultValue) {
+        if (key == FREE) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+        int i = slot(key);
+        return (keys[i] == key) ? values[i] : defaultValue;
+    }
+
+    public void put(int key, int value) {
+        if (key == FREE) {
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return;
+        }
+
+        int i = slot(key);
+        if (keys[i] == key) {
+            values[i] = value;
+            return;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > (mask + 1) >>> 1) {
+            rehash((mask + 1) << 1);
+        }
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys, oldValues = values;
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            int k = oldKeys[j];
+            if (k != FREE) {
+                int i = slot(k);
+                keys[i] = k;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    public Spliterator.OfInt keySpliterator() {
+        return new IntIntHashMapSpliterator(keys, keys, hasZeroKey, 0, 0, keys.length + 1, size);
+    }
+
+    public Spliterator.OfInt valueSpliterator() {
+        return new IntIntHashMapSpliterator(keys, values, hasZeroKey, zeroValue, 0, keys.length + 1, size);
+    }
+
+    public IntStream keyStream() {
+        return StreamSupport.intStream(keySpliterator(), false);
+    }
+
+    public IntStream valueStream() {
+        return StreamSupport.intStream(valueSpliterator(), false);
+    }
+
+    /**
+     * Splits the table's slots in halves. The slot one past the end of the
+     * table stands for the mapping of the key 0, if any.
+     * <p>
+     * Since slots are occupied about evenly the size of each half is
+     * estimated as half of the size, as {@code HashMap} does.
+     */
+    private static final class IntIntHashMapSpliterator implements Spliterator.OfInt {
+
+        final int[] keys;
+        final int[] elements;
+        final boolean hasZeroKey;
+        final int zeroElement;
+        int index;
+        final int fence;
+        long est;
+
+        IntIntHashMapSpliterator(int[] keys, int[] elements, boolean hasZeroKey, int zeroElement,
+                                 int index, int fence, long est) {
+            this.keys = keys;
+            this.elements = elements;
+            this.hasZeroKey = hasZeroKey;
+            this.zeroElement = zeroElement;
+            this.index = index;
+            this.fence = fence;
+            this.est = est;
+        }
+
+        public IntIntHashMapSpliterator trySplit() {
+            int i = index, m = (i + fence) >>> 1;
+            return (m <= i) ? null :
+                   new IntIntHashMapSpliterator(keys, elements, hasZeroKey, zeroElement,
+                                                i, index = m, est >>>= 1);
+        }
+
+        public long estimateSize() {
+            return est;
+        }
+
+        public int characteristics() {
+            return 0;
+        }
+
+        public boolean tryAdvance(IntConsumer consumer) {
+            if (consumer == null) throw new NullPointerException();
+            int[] k = keys;
+            for (int i = index, f = fence; i < f; i++) {
+                if (i == k.length) {
+                    index = i + 1;
+                    if (hasZeroKey) {
+                        consumer.accept(zeroElement);
+                        return true;
+                    }
+                }
+                else if (k[i] != FREE) {
+                    index = i + 1;
+                    consumer.accept(elements[i]);
+                    return true;
+                }
+            }
+            index = fence;
+            return false;
+        }
+
+        public void forEachRemaining(IntConsumer consumer) {
+            if (consumer == null) throw new NullPointerException();
+            int[] k = keys, e = elements;
+            int i = index, f = fence;
+            index = f;
+            for (int t = Math.min(f, k.length); i < t; i++) {
+                if (k[i] != FREE) {
+                    consumer.accept(e[i]);
+                }
+            }
+            if (i < f && hasZeroKey) {
+                consumer.accept(zeroElement);
+            }
+        }
+    }
+}
@@ -0,0 +1,427 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package oracle.lambda.devoxx;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Spliterator;
+import java.util.function.IntConsumer;
+import java.util.function.LongToIntFunction;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Backing stores of ints, held on the heap in an {@code int[]} or in
+ * segments of {@code int[]}s, off the heap in direct buffers, or in a file
+ * mapped into memory.
+ * <p>
+ * Segmented and off-heap stores are held as segments of at most 2^28 ints
+ * so that a store may contain more than {@code Integer.MAX_VALUE} ints. The spliterator of
+ * every store splits on page-aligned boundaries, a page being 4096 bytes.
+ */
+final class IntStores {
+
+    static final int PAGE_INTS = 4096 / Integer.BYTES;
+
+    static final int SEGMENT_SHIFT = 28;
+
+    static final int SEGMENT_INTS = 1 << SEGMENT_SHIFT;
+
+    static final long SEGMENT_MASK = SEGMENT_INTS - 1;
+
+    private IntStores() {
+    }
+
+    interface IntStore {
+        long size();
+
+        Spliterator.OfInt spliterator();
+
+        default IntStream stream() {
+            return StreamSupport.intStream(spliterator(), false);
+        }
+    }
+
+    /**
+     * Creates a store of the given kind, "heap", "segmented", "direct" or
+     * "mapped", of ints produced by a generator identified by {@code id}.
+     * <p>
+     * A mapped store is backed by the file given by the system property
+     * {@code benchmark.storeFile}, defaulting to a file in the temporary
+     * directory named by generator id and size, so that stores of different
+     * generators do not share a file. The file is generated if it does not
+     * exist or is not of the expected length, and is otherwise reused as is.
+     */
+    static IntStore create(String kind, String id, long size, LongToIntFunction generator) {
+        switch (kind) {
+            case "heap":
+                return heap(size, generator);
+            case "segmented":
+                return segmented(size, generator);
+            case "direct":
+                return direct(size, generator);
+            case "mapped":
+                String file = System.getProperty("benchmark.storeFile",
+                                                 Paths.get(System.getProperty("java.io.tmpdir"),
+                                                           "ints." + id + "." + size + ".dat").toString());
+                return mapped(Paths.get(file), size, generator);
+            default:
+                throw new IllegalArgumentException("unknown store: " + kind);
+        }
+    }
+
+    static IntStore heap(long size, LongToIntFunction generator) {
+        if (size < 0L || size > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("size out of range for a heap store: " + size);
+        int[] array = new int[(int) size];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = generator.applyAsInt(i);
+        }
+        return new ArrayStore(array);
+    }
+
+    static IntStore segmented(long size, LongToIntFunction generator) {
+        if (size < 0L)
+            throw new IllegalArgumentException("size must be non-negative");
+        int[][] segments = new int[segmentCount(size)][];
+        for (int s = 0; s < segments.length; s++) {
+            int[] a = new int[segmentLength(size, s)];
+            long offset = (long) s << SEGMENT_SHIFT;
+            for (int i = 0; i < a.length; i++) {
+                a[i] = generator.applyAsInt(offset + i);
+            }
+            segments[s] = a;
+        }
+        return new SegmentedArrayStore(segments, size);
+    }
+
+    static IntStore direct(long size, LongToIntFunction generator) {
+        if (size < 0L)
+            throw new IllegalArgumentException("size must be non-negative");
+        IntBuffer[] segments = new IntBuffer[segmentCount(size)];
+        for (int s = 0; s < segments.length; s++) {
+            int length = segmentLength(size, s);
+            IntBuffer b = ByteBuffer.allocateDirect(length * Integer.BYTES)
+                    .order(ByteOrder.nativeOrder())
+                    .asIntBuffer();
+            fill(b, (long) s << SEGMENT_SHIFT, generator);
+            segments[s] = b;
+        }
+        return new BufferStore(segments, size);
+    }
+
+    /**
+     * Creates a store mapped from a file, generating the file if it does not
+     * exist or is not of the expected length.  A file is generated under a
+     * temporary name and renamed once complete, so that one left partly
+     * written by a killed run is never reused.
+     */
+    static IntStore mapped(Path file, long size, LongToIntFunction generator) {
+        if (size < 0L)
+            throw new IllegalArgumentException("size must be non-negative");
+        try {
+            if (!Files.exists(file) || Files.size(file) != size * Integer.BYTES) {
+                Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+                try (FileChannel fc = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                                                       StandardOpenOption.TRUNCATE_EXISTING,
+                                                       StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    for (int s = 0; s < segmentCount(size); s++) {
+                        MappedByteBuffer mb = map(fc, FileChannel.MapMode.READ_WRITE, size, s);
+                        fill(mb.order(ByteOrder.nativeOrder()).asIntBuffer(), (long) s << SEGMENT_SHIFT, generator);
+                        mb.force();
+                    }
+                }
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+
+            try (FileChannel fc = FileChannel.open(file, StandardOpenOption.READ)) {
+                IntBuffer[] segments = new IntBuffer[segmentCount(size)];
+                for (int s = 0; s < segments.length; s++) {
+                    segments[s] = map(fc, FileChannel.MapMode.READ_ONLY, size, s)
+                            .order(ByteOrder.nativeOrder()).asIntBuffer();
+                }
+                return new BufferStore(segments, size);
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel fc, FileChannel.MapMode mode, long size, int s)
+            throws IOException {
+        return fc.map(mode, ((long) s << SEGMENT_SHIFT) * Integer.BYTES,
+                      (long) segmentLength(size, s) * Integer.BYTES);
+    }
+
+    private static int segmentCount(long size) {
+        return (int) ((size + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+    }
+
+    private static int segmentLength(long size, int s) {
+        return (int) Math.min(SEGMENT_INTS, size - ((long) s << SEGMENT_SHIFT));
+    }
+
+    private static void fill(IntBuffer b, long offset, LongToIntFunction generator) {
+        for (int i = 0; i < b.limit(); i++) {
+            b.put(i, generator.applyAsInt(offset + i));
+        }
+    }
+
+    /**
+     * Returns the page boundary strictly inside a range that is nearest its
+     * mid point, or {@code lo} if there is no page boundary strictly inside
+     * the range.
+     */
+    static long alignedMidPoint(long lo, long hi) {
+        long mid = (lo + hi) >>> 1;
+        long down = mid & -PAGE_INTS, up = down + PAGE_INTS;
+        boolean hasDown = down > lo, hasUp = up < hi;
+        if (hasDown && (!hasUp || mid - down <= up - mid))
+            return down;
+        return hasUp ? up : lo;
+    }
+
+    static final class ArrayStore implements IntStore {
+        final int[] array;
+
+        ArrayStore(int[] array) {
+            this.array = array;
+        }
+
+        public long size() {
+            return array.length;
+        }
+
+        public Spliterator.OfInt spliterator() {
+            return new ArraySpliterator(array, 0, array.length);
+        }
+    }
+
+    private static final class ArraySpliterator implements Spliterator.OfInt {
+
+        final int[] array;
+        int index;
+        final int fence;
+
+        ArraySpliterator(int[] array, int index, int fence) {
+            this.array = array;
+            this.index = index;
+            this.fence = fence;
+        }
+
+        public ArraySpliterator trySplit() {
+            int i = index, m = (int) alignedMidPoint(i, fence);
+            return (m <= i) ? null :
+                   new ArraySpliterator(array, i, index = m);
+        }
+
+        public long estimateSize() {
+            return fence - index;
+        }
+
+        public int characteristics() {
+            return (Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED |
+                    Spliterator.NONNULL | Spliterator.IMMUTABLE);
+        }
+
+        public boolean tryAdvance(IntConsumer consumer) {
+            if (consumer == null) throw new NullPointerException();
+            int i = index;
+            if (i < fence) {
+                consumer.accept(array[i]);
+                index = i + 1;
+                return true;
+            }
+            return false;
+        }
+
+        public void forEachRemaining(IntConsumer consumer) {
+            if (consumer == null) throw new NullPointerException();
+            int[] a = array;
+            int i = index, f = fence;
+            index = f;
+            for (; i < f; i++) {
+                consumer.accept(a[i]);
+            }
+        }
+    }
+
+    static final class SegmentedArrayStore implements IntStore {
+        final int[][] segments;
+        final long size;
+
+        SegmentedArrayStore(int[][] segments, long size) {
+            this.segments = segments;
+            this.size = size;
+        }
+
+        public long size() {
+            return size;
+        }
+
+        public Spliterator.OfInt spliterator() {
+            return new SegmentedArraySpliterator(segments, 0L, size);
+        }
+    }
+
+    private static final class SegmentedArraySpliterator implements Spliterator.OfInt {
+
+        final int[][] segments;
+        long index;
+        final long fence;
+
+        SegmentedArraySpliterator(int[][] segments, long index, long fence) {
+            this.segments = segments;
+            this.index = index;
+            this.fence = fence;
+        }
+
+        public SegmentedArraySpliterator trySplit() {
+            long i = index, m = alignedMidPoint(i, fence);
+            return (m <= i) ? null :
+                   new SegmentedArraySpliterator(segments, i, index = m);
+        }
+
+        public long estimateSize() {
+            return fence - index;
+        }
+
+        public int characteristics() {
+            return (Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED |
+                    Spliterator.NONNULL | Spliterator.IMMUTABLE);
+        }
+
+        public boolean tryAdvance(IntConsumer consumer) {
+            if (consumer == null) throw new NullPointerException();
+            long i = index;
+            if (i < fence) {
+                consumer.accept(segments[(int) (i >>> SEGMENT_SHIFT)][(int) (i & SEGMENT_MASK)]);
+                index = i + 1;
+                return true;
+            }
+            return false;
+        }
+
+        public void forEachRemaining(IntConsumer consumer) {
+            if (consumer == null) throw new NullPointerException();
+            long i = index, f = fence;
+            index = f;
+            while (i < f) {
+                int s = (int) (i >>> SEGMENT_SHIFT);
+                long base = (long) s << SEGMENT_SHIFT;
+                int[] a = segments[s];
+                int to = (int) (Math.min(f, base + SEGMENT_INTS) - base);
+                for (int j = (int) (i - base); j < to; j++) {
+                    consumer.accept(a[j]);
+                }
+                i = base + to;
+            }
+        }
+    }
+
+    static final class BufferStore implements IntStore {
+        final IntBuffer[] segments;
+        final long size;
+
+        BufferStore(IntBuffer[] segments, long size) {
+            this.segments = segments;
+            this.size = size;
+        }
+
+        public long size() {
+            return size;
+        }
+
+        public Spliterator.OfInt spliterator() {
+            return new BufferSpliterator(segments, 0L, size);
+        }
+    }
+
+    private static final class BufferSpliterator implements Spliterator.OfInt {
+
+        final IntBuffer[] segments;
+        long index;
+        final long fence;
+
+        BufferSpliterator(IntBuffer[] segments, long index, long fence) {
+            this.segments = segments;
+            this.index = index;
+            this.fence = fence;
+        }
+
+        public BufferSpliterator trySplit() {
+            long i = index, m = alignedMidPoint(i, fence);
+            return (m <= i) ? null :
+                   new BufferSpliterator(segments, i, index = m);
+        }
+
+        public long estimateSize() {
+            return fence - index;
+        }
+
+        public int characteristics() {
+            return (Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED |
+                    Spliterator.NONNULL | Spliterator.IMMUTABLE);
+        }
+
+        public boolean tryAdvance(IntConsumer consumer) {
+            if (consumer == null) throw new NullPointerException();
+            long i = index;
+            if (i < fence) {
+                consumer.accept(segments[(int) (i >>> SEGMENT_SHIFT)].get((int) (i & SEGMENT_MASK)));
+                index = i + 1;
+                return true;
+            }
+            return false;
+        }
+
+        public void forEachRemaining(IntConsumer consumer) {
+            if (consumer == null) throw new NullPointerException();
+            long i = index, f = fence;
+            index = f;
+            while (i < f) {
+                int s = (int) (i >>> SEGMENT_SHIFT);
+                long base = (long) s << SEGMENT_SHIFT;
+                IntBuffer b = segments[s];
+                int to = (int) (Math.min(f, base + SEGMENT_INTS) - base);
+                for (int j = (int) (i - base); j < to; j++) {
+                    consumer.accept(b.get(j));
+                }
+                i = base + to;
+            }
+        }
+    }
+}
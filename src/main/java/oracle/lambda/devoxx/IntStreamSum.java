@@ -26,13 +26,17 @@ package oracle.lambda.devoxx;
 
 import org.openjdk.jmh.annotations.BenchmarkMode;
 import org.openjdk.jmh.annotations.GenerateMicroBenchmark;
+import org.openjdk.jmh.annotations.Level;
 import org.openjdk.jmh.annotations.Mode;
 import org.openjdk.jmh.annotations.OutputTimeUnit;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
 
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
+import java.util.function.IntUnaryOperator;
 
 /*
 
@@ -44,6 +48,12 @@ java -XX:-TieredCompilation -XX:CompileCommandFile=hotspot_compiler -jar target/
 
 java -XX:-TieredCompilation -XX:MaxInlineLevel=11 -jar target/microbenchmarks.jar -wi 5 -w 50ms -r 50ms -i 20 -f 1 ".*IntStreamSum.*"
 
+java -XX:-TieredCompilation -Dbenchmark.granularity=4096 -Dbenchmark.pool=dedicated -jar target/microbenchmarks.jar -wi 5 -w 50ms -r 50ms -i 20 -f 1 ".*IntStreamSum.*"
+
+java -XX:-TieredCompilation -Dbenchmark.pollution=16 -jar target/microbenchmarks.jar -wi 5 -w 50ms -r 50ms -i 20 -f 1 ".*IntStreamSum.*"
+
+java -XX:-TieredCompilation -Dbenchmark.store=mapped -Dbenchmark.storeN=4000000000 -jar target/microbenchmarks.jar -wi 5 -i 20 -f 1 ".*IntStreamSum.*Store"
+
  */
 
 @State
@@ -53,15 +63,65 @@ public class IntStreamSum {
 
     private static int N = Integer.getInteger("benchmark.n", 100000);
 
+    private static String STORE = System.getProperty("benchmark.store", "heap");
+
+    private static long STORE_N = Long.getLong("benchmark.storeN", N);
+
+    private static int GRANULARITY = Integer.getInteger("benchmark.granularity", 64);
+
+    private static String POOL = System.getProperty("benchmark.pool", "common");
+
+    private static double COST = Double.parseDouble(System.getProperty("benchmark.cost", "1.0"));
+
+    private static int POLLUTION = Integer.getInteger("benchmark.pollution", 0);
+
+    private static int POLLUTION_ROUNDS = Integer.getInteger("benchmark.pollutionRounds", 100);
+
     public int[] array;
     public int length = N;
+    public int polluted;
+    public ForkJoinPool pool;
+    public IntArrayReducer reducer;
 
-    @Setup
+    @Setup(Level.Trial)
     public void setUp() {
         array = new int[length];
         for(int i = 0; i < length; i++) {
             array[i] = 3 * i;
         }
+        pool = POOL.equals("dedicated") ? new ForkJoinPool() : ForkJoinPool.commonPool();
+        reducer = new IntArrayReducer(pool, GRANULARITY, COST);
+        pollute();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (pool != ForkJoinPool.commonPool()) {
+            pool.shutdown();
+        }
+    }
+
+    /*
+       Pollutes the profiles of the stream implementation, as a long running
+       application with many pipeline shapes would, by running pipelines with
+       mappers of K distinct classes, sequentially and in parallel, before
+       measurement. Rounds interleave the shapes so that all of them have
+       been seen before the stream implementation is compiled. This is done
+       as part of the trial setup, after the array is filled.
+     */
+    private void pollute() {
+        if (POLLUTION <= 0)
+            return;
+
+        IntUnaryOperator[] mappers = DistinctLambdas.mappers(POLLUTION);
+        int r = 0;
+        for (int round = 0; round < POLLUTION_ROUNDS; round++) {
+            for (IntUnaryOperator mapper : mappers) {
+                r += Arrays.stream(array).map(mapper).sum();
+                r += Arrays.stream(array).parallel().map(mapper).sum();
+            }
+        }
+        polluted = r;
     }
 
     @GenerateMicroBenchmark
@@ -82,4 +142,60 @@ public class IntStreamSum {
     public int sequential() {
         return Arrays.stream(array).map(e -> e * 5).sum();
     }
+
+    @GenerateMicroBenchmark
+    public int reducer() {
+        return reducer.sum(array, e -> e * 5);
+    }
+
+    /*
+       The store is held in its own state, so that it is only allocated and
+       filled for the benchmarks that use it.
+     */
+    @State
+    public static class Store {
+        public IntStores.IntStore store;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            store = IntStores.create(STORE, "IntStreamSum", STORE_N, i -> 3 * (int) i);
+        }
+    }
+
+    @GenerateMicroBenchmark
+    public int parallelStore(Store s) {
+        return s.store.stream().parallel().map(e -> e * 5).sum();
+    }
+
+    @GenerateMicroBenchmark
+    public int sequentialStore(Store s) {
+        return s.store.stream().map(e -> e * 5).sum();
+    }
+
+    /*
+       Calibrates, once per trial, whether adaptive() evaluates in parallel.
+       This is a separate state so that the pipelines timed by calibration
+       only run in the trials of adaptive(), and it uses an array of its own.
+     */
+    @State
+    public static class Adaptive {
+        public boolean parallel;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            int[] a = new int[N];
+            for (int i = 0; i < a.length; i++) {
+                a[i] = 3 * i;
+            }
+            AdaptiveThresholds.Workload workload = (n, p) -> p
+                    ? Arrays.stream(a, 0, (int) n).parallel().map(e -> e * 5).sum()
+                    : Arrays.stream(a, 0, (int) n).map(e -> e * 5).sum();
+            parallel = AdaptiveThresholds.shared().isParallel("IntStreamSum.sum", N, workload);
+        }
+    }
+
+    @GenerateMicroBenchmark
+    public int adaptive(Adaptive a) {
+        return a.parallel ? parallel() : sequential();
+    }
 }
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package oracle.lambda.devoxx;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads and writes benchmark results in the CSV format JMH writes with
+ * {@code -rf csv}, optionally tagged with the size, {@code benchmark.n},
+ * the results were measured at.
+ * <p>
+ * The columns read are, in order, benchmark, mode, threads, samples,
+ * score, score error and unit. A merged file has an additional trailing
+ * column, the size, which is empty if the size is not known. Scores are
+ * written in full precision.
+ */
+final class JmhResults {
+
+    private JmhResults() {
+    }
+
+    static final class Result {
+        final String benchmark;
+        final String mode;
+        final int threads;
+        final long samples;
+        final double score;
+        final double error;
+        final String unit;
+        final String n;
+
+        Result(String benchmark, String mode, int threads, long samples,
+               double score, double error, String unit, String n) {
+            this.benchmark = benchmark;
+            this.mode = mode;
+            this.threads = threads;
+            this.samples = samples;
+            this.score = score;
+            this.error = error;
+            this.unit = unit;
+            // A missing size is null, whether read from a raw JMH file or
+            // as an empty column of a merged file
+            this.n = (n == null || n.isEmpty()) ? null : n;
+        }
+
+        Result withN(String n) {
+            return new Result(benchmark, mode, threads, samples, score, error, unit, n);
+        }
+
+        /**
+         * Returns the unqualified name of the benchmark method.
+         */
+        String method() {
+            return benchmark.substring(benchmark.lastIndexOf('.') + 1);
+        }
+
+        /**
+         * Returns the benchmark class, the benchmark name less the method.
+         */
+        String type() {
+            int i = benchmark.lastIndexOf('.');
+            return (i < 0) ? "" : benchmark.substring(0, i);
+        }
+
+        /**
+         * Returns true if a higher score is better, as for throughput.
+         */
+        boolean higherIsBetter() {
+            return mode.startsWith("thrpt") || mode.equalsIgnoreCase("Throughput");
+        }
+
+        /**
+         * Returns a key identifying the measurement, independent of its score.
+         */
+        String key() {
+            return benchmark + "|" + mode + "|" + threads + (n == null ? "" : "|" + n);
+        }
+    }
+
+    static List<Result> read(Path file) throws IOException {
+        List<Result> rs = new ArrayList<>();
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        for (int i = 1; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty())
+                continue;
+            List<String> fs = split(line);
+            if (fs.size() < 7)
+                throw new IOException(file + ":" + (i + 1) + ": expected at least 7 columns: " + line);
+            rs.add(new Result(fs.get(0), fs.get(1), Integer.parseInt(fs.get(2)), Long.parseLong(fs.get(3)),
+                              parseDouble(fs.get(4)), parseDouble(fs.get(5)), fs.get(6),
+                              fs.size() > 7 ? fs.get(7) : null));
+        }
+        return rs;
+    }
+
+    private static double parseDouble(String s) {
+        return s.equalsIgnoreCase("NaN") ? Double.NaN : Double.parseDouble(s.replace(',', '.'));
+    }
+
+    private static List<String> split(String line) {
+        List<String> fs = new ArrayList<>();
+        StringBuilder f = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    f.append('"');
+                    i++;
+                }
+                else {
+                    quoted = !quoted;
+                }
+            }
+            else if (c == ',' && !quoted) {
+                fs.add(f.toString());
+                f.setLength(0);
+            }
+            else {
+                f.append(c);
+            }
+        }
+        fs.add(f.toString());
+        return fs;
+    }
+
+    static void writeCsv(Path file, List<Result> rs) throws IOException {
+        try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            w.write("\"Benchmark\",\"Mode\",\"Threads\",\"Samples\",\"Score\",\"Score Error\",\"Unit\",\"N\"");
+            w.newLine();
+            for (Result r : rs) {
+                w.write(String.format(Locale.ROOT, "\"%s\",\"%s\",%d,%d,%s,%s,\"%s\",\"%s\"",
+                                      r.benchmark, r.mode, r.threads, r.samples,
+                                      Double.toString(r.score), Double.toString(r.error), r.unit,
+                                      r.n == null ? "" : r.n));
+                w.newLine();
+            }
+        }
+    }
+
+    static void writeJson(Path file, List<Result> rs) throws IOException {
+        try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            w.write("[");
+            w.newLine();
+            for (int i = 0; i < rs.size(); i++) {
+                Result r = rs.get(i);
+                w.write(String.format(Locale.ROOT,
+                                      "  {\"benchmark\": \"%s\", \"mode\": \"%s\", \"threads\": %d, \"samples\": %d, " +
+                                      "\"score\": %s, \"scoreError\": %s, \"unit\": \"%s\", \"n\": %s}%s",
+                                      r.benchmark, r.mode, r.threads, r.samples, json(r.score), json(r.error), r.unit,
+                                      r.n == null ? "null" : "\"" + r.n + "\"", i + 1 < rs.size() ? "," : ""));
+                w.newLine();
+            }
+            w.write("]");
+            w.newLine();
+        }
+    }
+
+    private static String json(double d) {
+        return Double.isNaN(d) || Double.isInfinite(d) ? "null" : Double.toString(d);
+    }
+}
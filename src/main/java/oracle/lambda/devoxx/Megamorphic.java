@@ -133,4 +133,78 @@ public class Megamorphic {
                 .sum();
     }
 
+    @GenerateMicroBenchmark
+    public int parallelFused1() {
+        IntUnaryOperator mapper = e -> e * 5;
+        return FusedIntPipeline.of(array).parallel()
+                .map(mapper)
+                .map(mapper)
+                .map(mapper)
+                .map(mapper)
+                .sum();
+    }
+
+    @GenerateMicroBenchmark
+    public int sequentialFused1() {
+        IntUnaryOperator mapper = e -> e * 5;
+        return FusedIntPipeline.of(array)
+                .map(mapper)
+                .map(mapper)
+                .map(mapper)
+                .map(mapper)
+                .sum();
+    }
+
+    @GenerateMicroBenchmark
+    public int parallelFused2() {
+        IntUnaryOperator mapper1 = e -> e * 5;
+        IntUnaryOperator mapper2 = e -> e * 5;
+        return FusedIntPipeline.of(array).parallel()
+                .map(mapper1)
+                .map(mapper2)
+                .map(mapper1)
+                .map(mapper2)
+                .sum();
+    }
+
+    @GenerateMicroBenchmark
+    public int sequentialFused2() {
+        IntUnaryOperator mapper1 = e -> e * 5;
+        IntUnaryOperator mapper2 = e -> e * 5;
+        return FusedIntPipeline.of(array)
+                .map(mapper1)
+                .map(mapper2)
+                .map(mapper1)
+                .map(mapper2)
+                .sum();
+    }
+
+    @GenerateMicroBenchmark
+    public int parallelFused4() {
+        IntUnaryOperator mapper1 = e -> e * 5;
+        IntUnaryOperator mapper2 = e -> e * 5;
+        IntUnaryOperator mapper3 = e -> e * 5;
+        IntUnaryOperator mapper4 = e -> e * 5;
+        return FusedIntPipeline.of(array).parallel()
+                .map(mapper1)
+                .map(mapper2)
+                .map(mapper3)
+                .map(mapper4)
+                .sum();
+    }
+
+    @GenerateMicroBenchmark
+    public int sequentialFused4() {
+        IntUnaryOperator mapper1 = e -> e * 5;
+        IntUnaryOperator mapper2 = e -> e * 5;
+        IntUnaryOperator mapper3 = e -> e * 5;
+        IntUnaryOperator mapper4 = e -> e * 5;
+        return FusedIntPipeline.of(array)
+                .map(mapper1)
+                .map(mapper2)
+                .map(mapper3)
+                .map(mapper4)
+                .sum();
+    }
+
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package oracle.lambda.devoxx;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.GenerateMicroBenchmark;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntUnaryOperator;
+
+/*
+
+for S in 1 2 4 8 16 32 64; do java -XX:-TieredCompilation -Dbenchmark.shapes=$S -jar target/microbenchmarks.jar -wi 5 -w 50ms -r 50ms -i 20 -f 1 ".*MegamorphicShapes.*"; done
+
+ */
+
+@State
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MegamorphicShapes {
+
+    private static int N = Integer.getInteger("benchmark.n", 100000);
+
+    private static int SHAPES = Integer.getInteger("benchmark.shapes", 1);
+
+    private static int SHAPE_CACHE = Integer.getInteger("benchmark.shapeCache", 64);
+
+    private static int CHAIN_LENGTH = 4;
+
+    public int[] array;
+    public int length = N;
+
+    // Each shape is a chain of mappers of classes not used by any other shape
+    public IntUnaryOperator[][] chains;
+    public int next;
+
+    public IntChainSpecializer specializer;
+
+    @Setup
+    public void setUp() {
+        array = new int[length];
+        for(int i = 0; i < length; i++) {
+            array[i] = 3 * i;
+        }
+
+        IntUnaryOperator[] mappers = DistinctLambdas.mappers(SHAPES * CHAIN_LENGTH);
+        chains = new IntUnaryOperator[SHAPES][];
+        for (int s = 0; s < SHAPES; s++) {
+            chains[s] = Arrays.copyOfRange(mappers, s * CHAIN_LENGTH, (s + 1) * CHAIN_LENGTH);
+        }
+        specializer = new IntChainSpecializer(SHAPE_CACHE);
+    }
+
+    private IntUnaryOperator[] nextChain() {
+        IntUnaryOperator[] chain = chains[next];
+        next = (next + 1) % chains.length;
+        return chain;
+    }
+
+    @GenerateMicroBenchmark
+    public int parallel() {
+        IntUnaryOperator[] chain = nextChain();
+        return Arrays.stream(array).parallel()
+                .map(chain[0])
+                .map(chain[1])
+                .map(chain[2])
+                .map(chain[3])
+                .sum();
+    }
+
+    @GenerateMicroBenchmark
+    public int sequential() {
+        IntUnaryOperator[] chain = nextChain();
+        return Arrays.stream(array)
+                .map(chain[0])
+                .map(chain[1])
+                .map(chain[2])
+                .map(chain[3])
+                .sum();
+    }
+
+    @GenerateMicroBenchmark
+    public int parallelSpecialized() {
+        return IntChainSpecializer.parallelSum(specializer.kernel(nextChain()), array);
+    }
+
+    @GenerateMicroBenchmark
+    public int sequentialSpecialized() {
+        return specializer.kernel(nextChain()).sum(array, 0, array.length);
+    }
+}
@@ -28,19 +28,16 @@ import org.openjdk.jmh.annotations.BenchmarkMode;
 import org.openjdk.jmh.annotations.GenerateMicroBenchmark;
 import org.openjdk.jmh.annotations.Mode;
 import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Spliterator;
 import java.util.SplittableRandom;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Consumer;
 import java.util.stream.IntStream;
-import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
 import static java.util.stream.Collectors.toList;
 
@@ -48,6 +45,10 @@ import static java.util.stream.Collectors.toList;
 
 java -XX:-TieredCompilation -jar target/microbenchmarks.jar -wi 5 -w 50ms -r 50ms -i 20 -f 1 ".*MonteCarloPi.*"
 
+java -XX:-TieredCompilation -Dbenchmark.n=4294967296 -Dbenchmark.epsilon=1e-4 -jar target/microbenchmarks.jar -wi 5 -i 20 -f 1 ".*MonteCarloPi.*(Bulk|Seeded|ToPrecision)"
+
+java -XX:-TieredCompilation -Dbenchmark.leafSize=4096 -Djava.util.concurrent.ForkJoinPool.common.parallelism=4 -jar target/microbenchmarks.jar -wi 5 -w 50ms -r 50ms -i 20 -f 1 ".*MonteCarloPi.*Bulk"
+
  */
 
 @State
@@ -57,74 +58,36 @@ public class MonteCarloPi {
 
     private static long N = Long.getLong("benchmark.n", 1L << 24);
 
-    private static double R = 1.0;
-
-    static final class SplittableRandoms {
-
-        private static final class SplittableRandomSpliterator implements Spliterator<SplittableRandom> {
-
-            final SplittableRandom rng;
-            long index;
-            final long fence;
-
-            SplittableRandomSpliterator(SplittableRandom rng, long index, long fence) {
-                this.rng = rng;
-                this.index = index;
-                this.fence = fence;
-            }
+    private static long LEAF_SIZE = Long.getLong("benchmark.leafSize", 1L << 16);
 
-            public SplittableRandomSpliterator trySplit() {
-                long i = index, m = (i + fence) >>> 1;
-                return (m <= i) ? null :
-                       new SplittableRandomSpliterator(rng.split(), i, index = m);
-            }
+    private static int LANES = Integer.getInteger("benchmark.lanes", 8);
 
-            public long estimateSize() {
-                return fence - index;
-            }
+    private static int BUFFER_SIZE = Integer.getInteger("benchmark.bufferSize", 1024);
 
-            public int characteristics() {
-                return (Spliterator.SIZED | Spliterator.SUBSIZED |
-                        Spliterator.NONNULL | Spliterator.IMMUTABLE);
-            }
+    private static long SEED = Long.getLong("benchmark.seed", 42L);
 
-            public boolean tryAdvance(Consumer<? super SplittableRandom> consumer) {
-                if (consumer == null) throw new NullPointerException();
-                long i = index, f = fence;
-                if (i < f) {
-                    consumer.accept(rng);
-                    index = i + 1;
-                    return true;
-                }
-                return false;
-            }
+    private static double EPSILON = Double.parseDouble(System.getProperty("benchmark.epsilon", "1e-3"));
 
-            public void forEachRemaining(Consumer<? super SplittableRandom> consumer) {
-                if (consumer == null) throw new NullPointerException();
-                long i = index, f = fence;
-                if (i < f) {
-                    index = f;
-                    SplittableRandom r = rng;
-                    do {
-                        consumer.accept(r);
-                    }
-                    while (++i < f);
-                }
-            }
-        }
+    private static double R = 1.0;
 
-        public static Stream<SplittableRandom> generators() {
-            return generators(new SplittableRandom(), Long.MAX_VALUE);
-        }
+    static {
+        if (LANES < 1)
+            throw new IllegalArgumentException("benchmark.lanes must be positive: " + LANES);
+        if (BUFFER_SIZE < 1)
+            throw new IllegalArgumentException("benchmark.bufferSize must be positive: " + BUFFER_SIZE);
+    }
 
-        public static Stream<SplittableRandom> generators(long streamSize) {
-            return generators(new SplittableRandom(), streamSize);
-        }
+    // Decides once per trial, for adaptive() only, whether to sample in parallel
+    @State
+    public static class Adaptive {
+        public boolean parallel;
 
-        public static Stream<SplittableRandom> generators(SplittableRandom sr, long streamSize) {
-            if (streamSize < 0L)
-                throw new IllegalArgumentException("size must be non-negative");
-            return StreamSupport.stream(new SplittableRandomSpliterator(sr, 0L, streamSize), false);
+        @Setup
+        public void setUp() {
+            AdaptiveThresholds.Workload workload = (n, p) -> p
+                    ? SplittableRandoms.squaredDistances(n).parallel().filter(d -> d < R * R).count()
+                    : SplittableRandoms.squaredDistances(n).filter(d -> d < R * R).count();
+            parallel = AdaptiveThresholds.shared().isParallel("MonteCarloPi.primitive", N, workload);
         }
     }
 
@@ -135,6 +98,60 @@ public class MonteCarloPi {
        pi = 4 * M / N
      */
 
+    static long scalarHits(SplittableRandom r, long n) {
+        long m = 0L;
+        for (long i = 0; i < n; i++) {
+            double x = r.nextDouble(-1, 1);
+            double y = r.nextDouble(-1, 1);
+
+            if (x * x + y * y < R * R) {
+                m++;
+            }
+        }
+        return m;
+    }
+
+    /*
+       The buffered kernel separates sample generation from the hit test.
+       Each lane has its own generator, split from the leaf's generator, and
+       fills its stride of a buffer of x and y coordinates. The hit test then
+       runs as a branch-free loop over the buffers, which is the shape a
+       vectorizing compiler (or DoubleVector with a compare mask) can use.
+       The kernel is plain Java, so it also serves as the scalar fallback.
+     */
+
+    static long bufferedHits(SplittableRandom r, long n) {
+        SplittableRandom[] lanes = new SplittableRandom[LANES];
+        for (int l = 0; l < LANES; l++) {
+            lanes[l] = r.split();
+        }
+        double[] xs = new double[BUFFER_SIZE];
+        double[] ys = new double[BUFFER_SIZE];
+        double rr = R * R;
+
+        long m = 0L;
+        for (long remaining = n; remaining > 0; ) {
+            int b = (int) Math.min(BUFFER_SIZE, remaining);
+            for (int l = 0; l < LANES; l++) {
+                SplittableRandom lr = lanes[l];
+                for (int j = l; j < b; j += LANES) {
+                    xs[j] = lr.nextDouble(-1, 1);
+                    ys[j] = lr.nextDouble(-1, 1);
+                }
+            }
+
+            int c = 0;
+            for (int j = 0; j < b; j++) {
+                double x = xs[j];
+                double y = ys[j];
+                c += (x * x + y * y < rr) ? 1 : 0;
+            }
+            m += c;
+            remaining -= b;
+        }
+        return m;
+    }
+
     @GenerateMicroBenchmark
     public double loop() {
         long m = 0L;
@@ -182,4 +199,111 @@ public class MonteCarloPi {
         double pi = (4.0 * m) / N;
         return pi;
     }
-}
\ No newline at end of file
+
+    @GenerateMicroBenchmark
+    public double parallelPrimitive() {
+        long m = SplittableRandoms.squaredDistances(N)
+                .parallel()
+                .filter(d -> d < R * R)
+                .count();
+
+        double pi = (4.0 * m) / N;
+        return pi;
+    }
+
+    @GenerateMicroBenchmark
+    public double sequentialPrimitive() {
+        long m = SplittableRandoms.squaredDistances(N)
+                .filter(d -> d < R * R)
+                .count();
+
+        double pi = (4.0 * m) / N;
+        return pi;
+    }
+
+    @GenerateMicroBenchmark
+    public double parallelBulk() {
+        long m = SplittableRandoms.parallelHits(N, LEAF_SIZE, MonteCarloPi::scalarHits);
+
+        double pi = (4.0 * m) / N;
+        return pi;
+    }
+
+    @GenerateMicroBenchmark
+    public double sequentialBulk() {
+        long m = SplittableRandoms.hits(N, LEAF_SIZE, MonteCarloPi::scalarHits)
+                .sum();
+
+        double pi = (4.0 * m) / N;
+        return pi;
+    }
+
+    @GenerateMicroBenchmark
+    public double loopBuffered() {
+        long m = bufferedHits(new SplittableRandom(), N);
+
+        double pi = (4.0 * m) / N;
+        return pi;
+    }
+
+    @GenerateMicroBenchmark
+    public double parallelBuffered() {
+        long m = SplittableRandoms.parallelHits(N, LEAF_SIZE, MonteCarloPi::bufferedHits);
+
+        double pi = (4.0 * m) / N;
+        return pi;
+    }
+
+    @GenerateMicroBenchmark
+    public double sequentialBuffered() {
+        long m = SplittableRandoms.hits(N, LEAF_SIZE, MonteCarloPi::bufferedHits)
+                .sum();
+
+        double pi = (4.0 * m) / N;
+        return pi;
+    }
+
+    @GenerateMicroBenchmark
+    public double adaptive(Adaptive a) {
+        return a.parallel ? parallelPrimitive() : sequentialPrimitive();
+    }
+
+    // Seeded, giving the same estimate for a given seed and leaf size
+    // whether evaluated sequentially or in parallel
+
+    @GenerateMicroBenchmark
+    public double parallelSeeded() {
+        long m = SplittableRandoms.parallelHits(new SplittableRandom(SEED), N, LEAF_SIZE, MonteCarloPi::scalarHits, null);
+
+        double pi = (4.0 * m) / N;
+        return pi;
+    }
+
+    @GenerateMicroBenchmark
+    public double sequentialSeeded() {
+        long m = SplittableRandoms.hits(new SplittableRandom(SEED), N, LEAF_SIZE, MonteCarloPi::scalarHits)
+                .sum();
+
+        double pi = (4.0 * m) / N;
+        return pi;
+    }
+
+    // Sampling until the 99% confidence interval is within epsilon, at most N samples
+
+    @GenerateMicroBenchmark
+    public double parallelToPrecision() {
+        SplittableRandoms.Convergence c = new SplittableRandoms.Convergence(EPSILON);
+        SplittableRandoms.parallelHits(new SplittableRandom(), N, LEAF_SIZE, MonteCarloPi::scalarHits, c);
+
+        return c.estimate();
+    }
+
+    @GenerateMicroBenchmark
+    public double sequentialToPrecision() {
+        SplittableRandoms.Convergence c = new SplittableRandoms.Convergence(EPSILON);
+        SplittableRandoms.hits(new SplittableRandom(), N, LEAF_SIZE, MonteCarloPi::scalarHits, c)
+                .sum();
+
+        return c.estimate();
+    }
+}
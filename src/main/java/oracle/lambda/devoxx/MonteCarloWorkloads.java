@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package oracle.lambda.devoxx;
+
+import oracle.lambda.devoxx.SplittableRandoms.Execution;
+import oracle.lambda.devoxx.SplittableRandoms.SampleKernel;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.GenerateMicroBenchmark;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+
+java -XX:-TieredCompilation -jar target/microbenchmarks.jar -wi 5 -i 20 -f 1 ".*MonteCarloWorkloads.*"
+
+java -XX:-TieredCompilation -Dbenchmark.dimensions=32 -Dbenchmark.steps=1024 -jar target/microbenchmarks.jar -wi 5 -i 20 -f 1 ".*MonteCarloWorkloads.*(Integral|Walk)"
+
+java -XX:-TieredCompilation -Dbenchmark.leafSize=1024 -Djava.util.concurrent.ForkJoinPool.common.parallelism=4 -jar target/microbenchmarks.jar -wi 5 -i 20 -f 1 ".*MonteCarloWorkloads.*"
+
+ */
+
+/**
+ * Monte Carlo workloads of increasing per-sample cost run through
+ * {@link SplittableRandoms#simulate}, to compare how the cost of splitting
+ * is amortized against the trivial pi kernel.
+ */
+@State
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MonteCarloWorkloads {
+
+    private static long N = Long.getLong("benchmark.n", 1L << 20);
+
+    private static long LEAF_SIZE = Long.getLong("benchmark.leafSize", 1L << 14);
+
+    private static long SEED = Long.getLong("benchmark.seed", 42L);
+
+    private static int DIMENSIONS = Integer.getInteger("benchmark.dimensions", 8);
+
+    private static int STEPS = Integer.getInteger("benchmark.steps", 64);
+
+    private static final double SPOT = 100.0, STRIKE = 100.0, RATE = 0.05, SIGMA = 0.2, EXPIRY = 1.0;
+    private static final double DRIFT = (RATE - 0.5 * SIGMA * SIGMA) * EXPIRY;
+    private static final double VOLATILITY = SIGMA * Math.sqrt(EXPIRY);
+    private static final double DISCOUNT = Math.exp(-RATE * EXPIRY);
+
+    /**
+     * 4 if a point in the square [-1, 1) x [-1, 1) falls within the unit
+     * circle, otherwise 0, whose mean is pi.
+     */
+    static final SampleKernel PI = r -> {
+        double x = r.nextDouble(-1, 1);
+        double y = r.nextDouble(-1, 1);
+        return x * x + y * y < 1.0 ? 4.0 : 0.0;
+    };
+
+    /**
+     * exp(-|x|^2) at a point drawn uniformly from the unit cube of
+     * {@code benchmark.dimensions} dimensions, whose mean is the integral
+     * of the function over the cube.
+     */
+    static final SampleKernel INTEGRAL = r -> {
+        double s = 0.0;
+        for (int i = 0; i < DIMENSIONS; i++) {
+            double x = r.nextDouble();
+            s += x * x;
+        }
+        return Math.exp(-s);
+    };
+
+    /**
+     * The discounted payoff of a European call under geometric Brownian
+     * motion, whose mean is the Black-Scholes price, about 10.45.
+     */
+    static final SampleKernel OPTION = r -> {
+        // Box-Muller, SplittableRandom has no nextGaussian
+        double u = 1.0 - r.nextDouble();
+        double z = Math.sqrt(-2.0 * Math.log(u)) * Math.cos(2.0 * Math.PI * r.nextDouble());
+        double st = SPOT * Math.exp(DRIFT + VOLATILITY * z);
+        return DISCOUNT * Math.max(st - STRIKE, 0.0);
+    };
+
+    /**
+     * The squared distance from the origin after a symmetric walk of
+     * {@code benchmark.steps} unit steps on the plane, whose mean is the
+     * number of steps.
+     */
+    static final SampleKernel WALK = r -> {
+        int x = 0, y = 0;
+        for (int i = 0; i < STEPS; i++) {
+            int d = r.nextInt(4);
+            x += (d == 0) ? 1 : (d == 1) ? -1 : 0;
+            y += (d == 2) ? 1 : (d == 3) ? -1 : 0;
+        }
+        return (double) x * x + (double) y * y;
+    };
+
+    static double simulate(SampleKernel kernel, Execution execution) {
+        return SplittableRandoms.simulate(new SplittableRandom(SEED), N, kernel, execution, LEAF_SIZE).mean();
+    }
+
+    // Pi, two draws and a compare
+
+    @GenerateMicroBenchmark
+    public double sequentialPi() {
+        return simulate(PI, Execution.SEQUENTIAL);
+    }
+
+    @GenerateMicroBenchmark
+    public double parallelPi() {
+        return simulate(PI, Execution.FORK_JOIN);
+    }
+
+    @GenerateMicroBenchmark
+    public double parallelBulkPi() {
+        return simulate(PI, Execution.BULK);
+    }
+
+    // Integration, benchmark.dimensions draws and an exp
+
+    @GenerateMicroBenchmark
+    public double sequentialIntegral() {
+        return simulate(INTEGRAL, Execution.SEQUENTIAL);
+    }
+
+    @GenerateMicroBenchmark
+    public double parallelIntegral() {
+        return simulate(INTEGRAL, Execution.FORK_JOIN);
+    }
+
+    @GenerateMicroBenchmark
+    public double parallelBulkIntegral() {
+        return simulate(INTEGRAL, Execution.BULK);
+    }
+
+    // Option pricing, two draws and a log, sqrt, cos and exp
+
+    @GenerateMicroBenchmark
+    public double sequentialOption() {
+        return simulate(OPTION, Execution.SEQUENTIAL);
+    }
+
+    @GenerateMicroBenchmark
+    public double parallelOption() {
+        return simulate(OPTION, Execution.FORK_JOIN);
+    }
+
+    @GenerateMicroBenchmark
+    public double parallelBulkOption() {
+        return simulate(OPTION, Execution.BULK);
+    }
+
+    // Random walk, benchmark.steps draws
+
+    @GenerateMicroBenchmark
+    public double sequentialWalk() {
+        return simulate(WALK, Execution.SEQUENTIAL);
+    }
+
+    @GenerateMicroBenchmark
+    public double parallelWalk() {
+        return simulate(WALK, Execution.FORK_JOIN);
+    }
+
+    @GenerateMicroBenchmark
+    public double parallelBulkWalk() {
+        return simulate(WALK, Execution.BULK);
+    }
+}
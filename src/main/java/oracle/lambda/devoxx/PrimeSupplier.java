@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package oracle.lambda.devoxx;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A long running supplier of probable primes.
+ * <p>
+ * For each bit length a bounded ring buffer of primes is kept full by
+ * workers running on a dedicated {@code ForkJoinPool}. When a ring is full
+ * its workers back off until consumers have taken primes from it. Consumers
+ * take primes without blocking with {@link #poll(int)}, or wait for one
+ * with {@link #take(int)}.
+ */
+final class PrimeSupplier implements AutoCloseable {
+
+    // Back off, when the ring is full or empty, doubling up to a maximum park time
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final int SPINS = 64;
+
+    // Backoff counts saturate once parking for the maximum time
+    private static final int MAX_BACKOFF = SPINS + 20;
+
+    private final Map<Integer, Ring<BigInteger>> rings = new HashMap<>();
+    private final ForkJoinPool pool;
+    private final long start = System.nanoTime();
+    private volatile boolean closed;
+
+    private final LongAdder produced = new LongAdder();
+    private final LongAdder consumed = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    /**
+     * Creates a supplier of primes of the given bit lengths, each buffered by
+     * a ring of the given capacity, rounded up to a power of two, that is
+     * refilled by the given number of workers.
+     */
+    PrimeSupplier(int[] bitLengths, int capacity, int workersPerBitLength) {
+        if (workersPerBitLength < 1)
+            throw new IllegalArgumentException("number of workers must be positive");
+        for (int bitLength : bitLengths) {
+            rings.put(bitLength, new Ring<>(capacity));
+        }
+        pool = new ForkJoinPool(rings.size() * workersPerBitLength);
+        for (Map.Entry<Integer, Ring<BigInteger>> e : rings.entrySet()) {
+            int bitLength = e.getKey();
+            Ring<BigInteger> ring = e.getValue();
+            for (int i = 0; i < workersPerBitLength; i++) {
+                pool.execute(() -> refill(bitLength, ring));
+            }
+        }
+    }
+
+    private void refill(int bitLength, Ring<BigInteger> ring) {
+        // Consecutive backoffs, escalating from yielding to parking while
+        // the ring stays full, and reset once a prime is offered
+        int full = 0;
+        while (!closed) {
+            if (ring.size() >= ring.capacity()) {
+                full = backOff(full);
+                continue;
+            }
+            BigInteger pp = BigInteger.probablePrime(bitLength, ThreadLocalRandom.current());
+            boolean offered;
+            while (!(offered = ring.offer(pp)) && !closed) {
+                full = backOff(full);
+            }
+            if (offered) {
+                produced.increment();
+                full = 0;
+            }
+        }
+    }
+
+    private Ring<BigInteger> ring(int bitLength) {
+        Ring<BigInteger> ring = rings.get(bitLength);
+        if (ring == null)
+            throw new IllegalArgumentException("no primes supplied of bit length " + bitLength);
+        return ring;
+    }
+
+    /**
+     * Returns a prime of the given bit length, or null if none is buffered.
+     */
+    BigInteger poll(int bitLength) {
+        BigInteger pp = ring(bitLength).poll();
+        if (pp != null) {
+            consumed.increment();
+        }
+        return pp;
+    }
+
+    /**
+     * Returns a prime of the given bit length, waiting for one to be
+     * buffered if necessary.
+     */
+    BigInteger take(int bitLength) throws InterruptedException {
+        Ring<BigInteger> ring = ring(bitLength);
+        BigInteger pp = ring.poll();
+        if (pp == null) {
+            long t = System.nanoTime();
+            for (int i = 0; (pp = ring.poll()) == null; ) {
+                if (closed)
+                    throw new IllegalStateException("closed");
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+                i = backOff(i);
+            }
+            waits.increment();
+            waitNanos.add(System.nanoTime() - t);
+        }
+        consumed.increment();
+        return pp;
+    }
+
+    /**
+     * Offers a prime of the given bit length, returning false if its ring
+     * is full.
+     */
+    boolean offer(BigInteger pp) {
+        boolean offered = ring(pp.bitLength()).offer(pp);
+        if (offered) {
+            produced.increment();
+        }
+        return offered;
+    }
+
+    /**
+     * Backs off for the i-th consecutive time, returning the count for the
+     * next backoff.
+     */
+    private static int backOff(int i) {
+        if (i < SPINS) {
+            Thread.yield();
+        }
+        else {
+            LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, MIN_PARK_NANOS << (i - SPINS)));
+        }
+        return (i < MAX_BACKOFF) ? i + 1 : i;
+    }
+
+    int depth(int bitLength) {
+        return ring(bitLength).size();
+    }
+
+    long produced() {
+        return produced.sum();
+    }
+
+    long consumed() {
+        return consumed.sum();
+    }
+
+    /**
+     * Returns the number of primes produced per second since creation.
+     */
+    double refillRate() {
+        return produced.sum() / ((System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Returns the number of takes that had to wait for a prime.
+     */
+    long waits() {
+        return waits.sum();
+    }
+
+    /**
+     * Returns the total time, in nanoseconds, takes have waited for primes.
+     */
+    long waitNanos() {
+        return waitNanos.sum();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        pool.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Integer, Ring<BigInteger>> e : rings.entrySet()) {
+            sb.append("depth[").append(e.getKey()).append("]=").append(e.getValue().size()).append(' ');
+        }
+        return sb.append(String.format("produced=%d consumed=%d refillRate=%.1f/s waits=%d meanWait=%.1fus",
+                                       produced(), consumed(), refillRate(), waits(),
+                                       waits() == 0 ? 0.0 : waitNanos() / 1e3 / waits()))
+                .toString();
+    }
+
+    /**
+     * A bounded, lock-free, multiple producer and consumer ring buffer.
+     * <p>
+     * Each slot has a sequence number: a producer may fill the slot for
+     * position p if its sequence is p, and then sets it to p + 1; a consumer
+     * may empty the slot for position p if its sequence is p + 1, and then
+     * sets it to p + capacity, the next position a producer will fill it.
+     */
+    static final class Ring<T> {
+        final AtomicReferenceArray<T> elements;
+        final AtomicLongArray sequences;
+        final int mask;
+        final AtomicLong head = new AtomicLong();
+        final AtomicLong tail = new AtomicLong();
+
+        Ring(int capacity) {
+            if (capacity < 1 || capacity > 1 << 30)
+                throw new IllegalArgumentException("capacity out of range: " + capacity);
+            int c = Integer.highestOneBit(capacity);
+            c = (c < capacity) ? c << 1 : c;
+            elements = new AtomicReferenceArray<>(c);
+            sequences = new AtomicLongArray(c);
+            for (int i = 0; i < c; i++) {
+                sequences.set(i, i);
+            }
+            mask = c - 1;
+        }
+
+        int capacity() {
+            return mask + 1;
+        }
+
+        int size() {
+            long s = tail.get() - head.get();
+            return (int) Math.max(0, Math.min(s, capacity()));
+        }
+
+        boolean offer(T e) {
+            if (e == null) throw new NullPointerException();
+            for (;;) {
+                long p = tail.get();
+                int i = (int) p & mask;
+                long d = sequences.get(i) - p;
+                if (d == 0) {
+                    if (tail.compareAndSet(p, p + 1)) {
+                        elements.lazySet(i, e);
+                        sequences.set(i, p + 1);
+                        return true;
+                    }
+                }
+                else if (d < 0) {
+                    return false;
+                }
+            }
+        }
+
+        T poll() {
+            for (;;) {
+                long p = head.get();
+                int i = (int) p & mask;
+                long d = sequences.get(i) - (p + 1);
+                if (d == 0) {
+                    if (head.compareAndSet(p, p + 1)) {
+                        T e = elements.get(i);
+                        elements.lazySet(i, null);
+                        sequences.set(i, p + mask + 1);
+                        return e;
+                    }
+                }
+                else if (d < 0) {
+                    return null;
+                }
+            }
+        }
+    }
+}
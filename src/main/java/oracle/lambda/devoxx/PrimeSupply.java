@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package oracle.lambda.devoxx;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.GenerateMicroBenchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+
+java -XX:-TieredCompilation -jar target/microbenchmarks.jar -wi 5 -i 20 -f 1 ".*PrimeSupply.*"
+
+java -XX:-TieredCompilation -Dbenchmark.workers=4 -Dbenchmark.bitLength=1024 -jar target/microbenchmarks.jar -wi 5 -i 20 -f 1 -tg 2,6 ".*PrimeSupply.mixed.*"
+
+java -XX:-TieredCompilation -Dbenchmark.supplyStats=PrimeSupply.stats.csv -jar target/microbenchmarks.jar -wi 5 -i 20 -f 1 ".*PrimeSupply.*"
+
+ */
+
+/*
+   The supplier's statistics, the ring depth at the end of the trial, primes
+   produced and consumed, refill rate, and the number of takes that waited
+   and their mean wait, are appended at the end of each trial as a line of
+   the CSV file given by benchmark.supplyStats, if set.
+ */
+
+@State(Scope.Group)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PrimeSupply {
+
+    private static int BIT_LENGTH = Integer.getInteger("benchmark.bitLength", 128);
+
+    private static int CAPACITY = Integer.getInteger("benchmark.capacity", 1024);
+
+    private static int WORKERS = Integer.getInteger("benchmark.workers", 2);
+
+    private static String STATS = System.getProperty("benchmark.supplyStats");
+
+    public PrimeSupplier supplier;
+
+    @Setup
+    public void setUp() {
+        supplier = new PrimeSupplier(new int[] { BIT_LENGTH }, CAPACITY, WORKERS);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        supplier.close();
+        if (STATS != null) {
+            writeStats(Paths.get(STATS));
+        }
+    }
+
+    private void writeStats(Path file) throws IOException {
+        boolean header = !Files.exists(file);
+        try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                                                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            if (header) {
+                w.write("\"Bit Length\",\"Workers\",\"Depth\",\"Produced\",\"Consumed\",\"Refill Rate\",\"Waits\",\"Mean Wait\"");
+                w.newLine();
+            }
+            long waits = supplier.waits();
+            w.write(String.format(Locale.ROOT, "%d,%d,%d,%d,%d,%s,%d,%s",
+                                  BIT_LENGTH, WORKERS, supplier.depth(BIT_LENGTH),
+                                  supplier.produced(), supplier.consumed(), Double.toString(supplier.refillRate()),
+                                  waits, Double.toString(waits == 0 ? 0.0 : supplier.waitNanos() / 1e3 / waits)));
+            w.newLine();
+        }
+    }
+
+    // Producers generating in the consumers' group, in addition to the workers
+
+    @GenerateMicroBenchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public boolean produce() {
+        return supplier.offer(BigInteger.probablePrime(BIT_LENGTH, ThreadLocalRandom.current()));
+    }
+
+    @GenerateMicroBenchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public BigInteger take() throws InterruptedException {
+        return supplier.take(BIT_LENGTH);
+    }
+
+    @GenerateMicroBenchmark
+    @Group("consumers")
+    @GroupThreads(4)
+    public BigInteger poll() {
+        return supplier.poll(BIT_LENGTH);
+    }
+}
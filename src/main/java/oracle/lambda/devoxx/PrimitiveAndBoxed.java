@@ -38,6 +38,10 @@ import java.util.concurrent.TimeUnit;
 
 java -XX:-TieredCompilation -jar target/microbenchmarks.jar -wi 5 -w 50ms -r 50ms -i 20 -f 1 ".*PrimitiveAndBoxed.*"
 
+java -XX:-TieredCompilation -Dbenchmark.n=10000000 -jar target/microbenchmarks.jar -wi 5 -i 20 -f 1 -prof gc ".*PrimitiveAndBoxed.*(Boxed|Unboxed)"
+
+java -XX:-TieredCompilation -XX:MaxDirectMemorySize=8g -Dbenchmark.store=direct -jar target/microbenchmarks.jar -wi 5 -w 50ms -r 50ms -i 20 -f 1 ".*PrimitiveAndBoxed.*"
+
  */
 
 @State
@@ -89,6 +93,16 @@ public class PrimitiveAndBoxed {
         return Arrays.stream(primitiveArray).map(e -> e * 5).sum();
     }
 
+    @GenerateMicroBenchmark
+    public int parallelPrimitiveStore(IntStreamSum.Store s) {
+        return s.store.stream().parallel().map(e -> e * 5).sum();
+    }
+
+    @GenerateMicroBenchmark
+    public int sequentialPrimitiveStore(IntStreamSum.Store s) {
+        return s.store.stream().map(e -> e * 5).sum();
+    }
+
     @GenerateMicroBenchmark
     public Integer parallelBoxed() {
         return Arrays.stream(boxedArray).parallel().map(e -> e * 5).reduce(0, Integer::sum);
@@ -98,4 +112,14 @@ public class PrimitiveAndBoxed {
     public Integer sequentialBoxed() {
         return Arrays.stream(boxedArray).map(e -> e * 5).reduce(0, Integer::sum);
     }
+
+    @GenerateMicroBenchmark
+    public Integer parallelUnboxed() {
+        return UnboxedIntegers.of(boxedArray).parallel().map(e -> e * 5).reduce(0, Integer::sum);
+    }
+
+    @GenerateMicroBenchmark
+    public Integer sequentialUnboxed() {
+        return UnboxedIntegers.of(boxedArray).map(e -> e * 5).reduce(0, Integer::sum);
+    }
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package oracle.lambda.devoxx;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.GenerateMicroBenchmark;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+
+java -XX:-TieredCompilation -jar target/microbenchmarks.jar -wi 5 -w 50ms -r 50ms -i 20 -f 1 ".*PrimitiveCollections.*"
+
+java -XX:-TieredCompilation -jar target/microbenchmarks.jar -wi 5 -i 20 -f 1 -prof gc ".*PrimitiveCollections.*"
+
+ */
+
+@State
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PrimitiveCollections {
+
+    private static int N = Integer.getInteger("benchmark.n", 100000);
+
+    public List<Integer> boxedList;
+    public Map<Integer, Integer> boxedMap;
+    public IntArrayList primitiveList;
+    public IntIntHashMap primitiveMap;
+    public int length = N;
+
+    @Setup
+    public void setUp() {
+        boxedList = new ArrayList<>(length);
+        boxedMap = new HashMap<>(length * 2);
+        primitiveList = new IntArrayList(length);
+        primitiveMap = new IntIntHashMap(length);
+        for(int i = 0; i < length; i++) {
+            boxedList.add(3 * i);
+            boxedMap.put(i, 3 * i);
+            primitiveList.add(3 * i);
+            primitiveMap.put(i, 3 * i);
+        }
+    }
+
+    @GenerateMicroBenchmark
+    public Integer parallelBoxedList() {
+        return boxedList.parallelStream().map(e -> e * 5).reduce(0, Integer::sum);
+    }
+
+    @GenerateMicroBenchmark
+    public Integer sequentialBoxedList() {
+        return boxedList.stream().map(e -> e * 5).reduce(0, Integer::sum);
+    }
+
+    @GenerateMicroBenchmark
+    public Integer parallelBoxedMap() {
+        return boxedMap.values().parallelStream().map(e -> e * 5).reduce(0, Integer::sum);
+    }
+
+    @GenerateMicroBenchmark
+    public Integer sequentialBoxedMap() {
+        return boxedMap.values().stream().map(e -> e * 5).reduce(0, Integer::sum);
+    }
+
+    @GenerateMicroBenchmark
+    public int parallelPrimitiveList() {
+        return primitiveList.stream().parallel().map(e -> e * 5).sum();
+    }
+
+    @GenerateMicroBenchmark
+    public int sequentialPrimitiveList() {
+        return primitiveList.stream().map(e -> e * 5).sum();
+    }
+
+    @GenerateMicroBenchmark
+    public int parallelPrimitiveMap() {
+        return primitiveMap.valueStream().parallel().map(e -> e * 5).sum();
+    }
+
+    @GenerateMicroBenchmark
+    public int sequentialPrimitiveMap() {
+        return primitiveMap.valueStream().map(e -> e * 5).sum();
+    }
+}
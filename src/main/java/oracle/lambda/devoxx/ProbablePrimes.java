@@ -34,11 +34,20 @@ import org.openjdk.jmh.annotations.State;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static java.util.stream.Collectors.toList;
 
@@ -46,6 +55,10 @@ import static java.util.stream.Collectors.toList;
 
 java -XX:-TieredCompilation -jar target/microbenchmarks.jar -wi 5 -w 50ms -r 50ms -i 20 -f 1 ".*ProbablePrimes.*"
 
+java -XX:-TieredCompilation -Dbenchmark.n=1000 -Dbenchmark.bitLength=1024 -jar target/microbenchmarks.jar -wi 5 -i 20 -f 1 ".*ProbablePrimes.*Sieved"
+
+for B in 128 256 512 1024 2048 4096; do java -XX:-TieredCompilation -Dbenchmark.bitLength=$B -jar target/microbenchmarks.jar -wi 5 -i 20 -f 1 -rf csv -rff ProbablePrimes.$B.txt ".*ProbablePrimes.*"; done
+
  */
 
 @State
@@ -57,6 +70,261 @@ public class ProbablePrimes {
 
     private static int BIT_LENGTH = Integer.getInteger("benchmark.bitLength", 128);
 
+    private static long SEED = Long.getLong("benchmark.seed", 42L);
+
+    private static int WINDOW = Integer.getInteger("benchmark.window", 1024);
+
+    private static String SHAPE = "ProbablePrimes.range." + BIT_LENGTH;
+
+    // Decides once per trial, for adaptive() only, whether to generate in parallel
+    @State
+    public static class Adaptive {
+        public boolean parallel;
+
+        @Setup
+        public void setUp() {
+            AdaptiveThresholds.Workload workload = (n, p) -> p
+                    ? IntStream.range(0, (int) n).parallel()
+                            .mapToObj(i -> BigInteger.probablePrime(BIT_LENGTH, ThreadLocalRandom.current()))
+                            .collect(toList())
+                    : IntStream.range(0, (int) n)
+                            .mapToObj(i -> BigInteger.probablePrime(BIT_LENGTH, ThreadLocalRandom.current()))
+                            .collect(toList());
+            parallel = AdaptiveThresholds.shared().isParallel(SHAPE, N, workload);
+        }
+    }
+
+    static final class Primes {
+
+        /**
+         * A spliterator over a range of indexes that generates, for each index,
+         * a probable prime from a generator seeded by the index and a root
+         * seed. The primes generated are therefore the same for a given seed
+         * however the range is split and in whatever order the leaves are
+         * evaluated.
+         * <p>
+         * Since the cost of generating each prime varies widely the range is
+         * split down to single elements, leaving it to work stealing to
+         * balance the load.
+         */
+        private static final class ProbablePrimeSpliterator implements Spliterator<BigInteger> {
+
+            final int bitLength;
+            final long seed;
+            long index;
+            final long fence;
+
+            ProbablePrimeSpliterator(int bitLength, long seed, long index, long fence) {
+                this.bitLength = bitLength;
+                this.seed = seed;
+                this.index = index;
+                this.fence = fence;
+            }
+
+            public ProbablePrimeSpliterator trySplit() {
+                long i = index, m = (i + fence) >>> 1;
+                return (m <= i) ? null :
+                       new ProbablePrimeSpliterator(bitLength, seed, i, index = m);
+            }
+
+            public long estimateSize() {
+                return fence - index;
+            }
+
+            public int characteristics() {
+                return (Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED |
+                        Spliterator.NONNULL | Spliterator.IMMUTABLE);
+            }
+
+            public boolean tryAdvance(Consumer<? super BigInteger> consumer) {
+                if (consumer == null) throw new NullPointerException();
+                long i = index, f = fence;
+                if (i < f) {
+                    consumer.accept(probablePrime(i));
+                    index = i + 1;
+                    return true;
+                }
+                return false;
+            }
+
+            public void forEachRemaining(Consumer<? super BigInteger> consumer) {
+                if (consumer == null) throw new NullPointerException();
+                long i = index, f = fence;
+                if (i < f) {
+                    index = f;
+                    do {
+                        consumer.accept(probablePrime(i));
+                    }
+                    while (++i < f);
+                }
+            }
+
+            BigInteger probablePrime(long i) {
+                // Seeding a SplittableRandom with seed + i and taking its first
+                // long mixes the index, so the per-index generators are independent
+                long s = new SplittableRandom(seed + i).nextLong();
+                return BigInteger.probablePrime(bitLength, new SplittableRandomAdapter(new SplittableRandom(s)));
+            }
+        }
+
+        /**
+         * Adapts a {@code SplittableRandom} to a {@code Random}, as required
+         * by {@code BigInteger.probablePrime}.
+         */
+        private static final class SplittableRandomAdapter extends Random {
+            private static final long serialVersionUID = 1L;
+
+            final SplittableRandom rng;
+
+            SplittableRandomAdapter(SplittableRandom rng) {
+                this.rng = rng;
+            }
+
+            @Override
+            protected int next(int bits) {
+                return rng.nextInt() >>> (32 - bits);
+            }
+
+            @Override
+            public int nextInt() {
+                return rng.nextInt();
+            }
+
+            @Override
+            public long nextLong() {
+                return rng.nextLong();
+            }
+
+            @Override
+            public void nextBytes(byte[] bytes) {
+                int i = 0;
+                while (i < bytes.length) {
+                    for (long r = rng.nextLong(), n = Math.min(bytes.length - i, Long.BYTES);
+                         n-- > 0; r >>>= Byte.SIZE) {
+                        bytes[i++] = (byte) r;
+                    }
+                }
+            }
+        }
+
+        /*
+           A sieved search draws a random odd base of the required bit length
+           and sieves a window of odd candidates, base + 2 * j for j in
+           [0, window), by the small primes. Only candidates that survive the
+           sieve are tested with isProbablePrime, with the same certainty
+           BigInteger.probablePrime uses. Windows are independent, so are
+           searched in parallel, each with a generator seeded from the root
+           seed in window order. The primes found in a window are taken in
+           increasing order and the windows in seed order, so the result is
+           the same for a given seed whether searched sequentially or in
+           parallel.
+         */
+
+        static final int CERTAINTY = 100;
+
+        static final int[] SMALL_PRIMES = IntStream.rangeClosed(3, 1 << 14)
+                .filter(i -> BigInteger.valueOf(i).isProbablePrime(CERTAINTY))
+                .toArray();
+
+        // The small primes grouped such that the product of each group fits in a long
+        static final int[][] SMALL_PRIME_GROUPS;
+
+        static final BigInteger[] SMALL_PRIME_PRODUCTS;
+
+        static {
+            List<int[]> groups = new ArrayList<>();
+            for (int i = 0; i < SMALL_PRIMES.length; ) {
+                int from = i;
+                for (long product = 1; i < SMALL_PRIMES.length && product <= Long.MAX_VALUE / SMALL_PRIMES[i]; i++) {
+                    product *= SMALL_PRIMES[i];
+                }
+                groups.add(Arrays.copyOfRange(SMALL_PRIMES, from, i));
+            }
+            SMALL_PRIME_GROUPS = groups.toArray(new int[0][]);
+            SMALL_PRIME_PRODUCTS = groups.stream()
+                    .map(g -> BigInteger.valueOf(Arrays.stream(g).asLongStream().reduce(1L, (x, y) -> x * y)))
+                    .toArray(BigInteger[]::new);
+        }
+
+        static List<BigInteger> sieveWindow(int bitLength, int window, long seed) {
+            Random rng = new SplittableRandomAdapter(new SplittableRandom(seed));
+            BigInteger base = new BigInteger(bitLength, rng)
+                    .setBit(bitLength - 1)
+                    .setBit(0);
+
+            BitSet composite = new BitSet(window);
+            for (int g = 0; g < SMALL_PRIME_GROUPS.length; g++) {
+                // One big remainder per group of small primes, reduced per prime
+                long rg = base.mod(SMALL_PRIME_PRODUCTS[g]).longValue();
+                for (int p : SMALL_PRIME_GROUPS[g]) {
+                    // Solve base + 2 * j = 0 (mod p) for the first j, 2^-1 being (p + 1) / 2
+                    long r = rg % p;
+                    long j = ((p - r) % p) * ((p + 1) >>> 1) % p;
+                    for (; j < window; j += p) {
+                        composite.set((int) j);
+                    }
+                }
+            }
+
+            List<BigInteger> primes = new ArrayList<>();
+            for (int j = composite.nextClearBit(0); j < window; j = composite.nextClearBit(j + 1)) {
+                BigInteger c = base.add(BigInteger.valueOf(2L * j));
+                if (c.bitLength() == bitLength && c.isProbablePrime(CERTAINTY)) {
+                    primes.add(c);
+                }
+            }
+            return primes;
+        }
+
+        public static List<BigInteger> sievedProbablePrimes(int bitLength, int window, long seed, int n,
+                                                            boolean parallel) {
+            // A base below the largest small prime could be sieved out
+            // as a multiple of itself
+            if (bitLength < 32)
+                throw new IllegalArgumentException("bit length must be at least 32");
+            if (window < 1)
+                throw new IllegalArgumentException("window must be positive");
+
+            // Odd numbers of bitLength bits are prime with a density of about
+            // 2 / (bitLength * ln 2)
+            double primesPerWindow = 2.0 * window / (bitLength * Math.log(2));
+            int minWindows = parallel ? ForkJoinPool.getCommonPoolParallelism() : 1;
+
+            SplittableRandom seeds = new SplittableRandom(seed);
+            List<BigInteger> primes = new ArrayList<>(n);
+            while (primes.size() < n) {
+                int windows = Math.max(minWindows, (int) Math.ceil((n - primes.size()) / primesPerWindow));
+                // Draw the window seeds in order, rather than with longs(), whose
+                // stream splits the generator when evaluated in parallel
+                long[] ws = new long[windows];
+                for (int i = 0; i < windows; i++) {
+                    ws[i] = seeds.nextLong();
+                }
+                LongStream s = Arrays.stream(ws);
+                if (parallel) {
+                    s = s.parallel();
+                }
+                List<List<BigInteger>> found = s
+                        .mapToObj(w -> sieveWindow(bitLength, window, w))
+                        .collect(Collectors.toList());
+                for (List<BigInteger> w : found) {
+                    for (BigInteger pp : w) {
+                        if (primes.size() == n)
+                            break;
+                        primes.add(pp);
+                    }
+                }
+            }
+            return primes;
+        }
+
+        public static Stream<BigInteger> probablePrimes(int bitLength, long seed, long streamSize) {
+            if (streamSize < 0L)
+                throw new IllegalArgumentException("size must be non-negative");
+            return StreamSupport.stream(new ProbablePrimeSpliterator(bitLength, seed, 0L, streamSize), false);
+        }
+    }
+
     @GenerateMicroBenchmark
     public List<BigInteger> loop() {
         List<BigInteger> pps = new ArrayList<>();
@@ -82,6 +350,13 @@ public class ProbablePrimes {
                 .collect(toList());
     }
 
+    @GenerateMicroBenchmark
+    public List<BigInteger> parallelRangeSized() {
+        return SizedCollectors.toList(IntStream.range(0, N)
+                .parallel()
+                .mapToObj(i -> BigInteger.probablePrime(BIT_LENGTH, ThreadLocalRandom.current())));
+    }
+
     @GenerateMicroBenchmark
     public List<BigInteger> parallelGenerate() {
         return Stream.generate(() -> BigInteger.probablePrime(BIT_LENGTH, ThreadLocalRandom.current()))
@@ -90,6 +365,14 @@ public class ProbablePrimes {
                 .collect(toList());
     }
 
+    @GenerateMicroBenchmark
+    public List<BigInteger> parallelGenerateSpined() {
+        return Stream.generate(() -> BigInteger.probablePrime(BIT_LENGTH, ThreadLocalRandom.current()))
+                .parallel()
+                .limit(N)
+                .collect(SizedCollectors.toSpinedList());
+    }
+
     @GenerateMicroBenchmark
     public List<BigInteger> sequentialGenerate() {
         return Stream.generate(() -> BigInteger.probablePrime(BIT_LENGTH, ThreadLocalRandom.current()))
@@ -97,4 +380,37 @@ public class ProbablePrimes {
                 .collect(toList());
     }
 
+    @GenerateMicroBenchmark
+    public List<BigInteger> parallelSpliterator() {
+        return Arrays.asList(Primes.probablePrimes(BIT_LENGTH, SEED, N)
+                .parallel()
+                .toArray(BigInteger[]::new));
+    }
+
+    @GenerateMicroBenchmark
+    public List<BigInteger> sequentialSpliterator() {
+        return Arrays.asList(Primes.probablePrimes(BIT_LENGTH, SEED, N)
+                .toArray(BigInteger[]::new));
+    }
+
+    /*
+       Primes per second per core is N / (score * cores) for parallelSieved,
+       and N / score for loopSieved.
+     */
+
+    @GenerateMicroBenchmark
+    public List<BigInteger> loopSieved() {
+        return Primes.sievedProbablePrimes(BIT_LENGTH, WINDOW, SEED, N, false);
+    }
+
+    @GenerateMicroBenchmark
+    public List<BigInteger> parallelSieved() {
+        return Primes.sievedProbablePrimes(BIT_LENGTH, WINDOW, SEED, N, true);
+    }
+
+    @GenerateMicroBenchmark
+    public List<BigInteger> adaptive(Adaptive a) {
+        return a.parallel ? parallelRange() : sequentialRange();
+    }
+
 }
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package oracle.lambda.devoxx;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/*
+
+java -Dgate.threshold=0.10 -cp target/microbenchmarks.jar oracle.lambda.devoxx.RegressionGate baseline/IntStreamSum.sweep.csv IntStreamSum.sweep.csv
+
+ */
+
+/**
+ * Compares benchmark results against a baseline, exiting with a non-zero
+ * status if any score has regressed by more than a threshold.
+ * <p>
+ * Results are read from CSV files, as written by JMH with {@code -rf csv}
+ * or merged by {@link Sweep}. A result is compared with the baseline result
+ * of the same benchmark, mode, thread count and size. It has regressed if,
+ * even taking both scores at the favourable end of their error bounds, the
+ * score is worse than the baseline score by more than the threshold, the
+ * system property {@code gate.threshold}, a fraction defaulting to 0.05.
+ * Only benchmarks matching the regular expression {@code gate.include} are
+ * compared.
+ * <p>
+ * A baseline result with no current result, as for a benchmark that
+ * failed, was renamed or was filtered out of the run, also fails the gate
+ * unless the system property {@code gate.allowMissing} is true.
+ */
+public final class RegressionGate {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("usage: RegressionGate <baseline.csv> <results.csv>");
+            System.exit(2);
+        }
+        double threshold = Double.parseDouble(System.getProperty("gate.threshold", "0.05"));
+        Pattern include = Pattern.compile(System.getProperty("gate.include", ".*"));
+        boolean allowMissing = Boolean.getBoolean("gate.allowMissing");
+
+        Map<String, JmhResults.Result> baseline = new LinkedHashMap<>();
+        for (JmhResults.Result r : JmhResults.read(Paths.get(args[0]))) {
+            baseline.put(r.key(), r);
+        }
+
+        List<String> regressions = new ArrayList<>();
+        System.out.println(String.format(Locale.ROOT, "%-60s %-6s %10s %22s %22s %9s  %s",
+                                         "Benchmark", "Mode", "N", "Baseline", "Current", "Change", "Status"));
+        for (JmhResults.Result r : JmhResults.read(Paths.get(args[1]))) {
+            if (!include.matcher(r.benchmark).matches())
+                continue;
+            JmhResults.Result b = baseline.remove(r.key());
+            if (b == null) {
+                print(null, r, Double.NaN, "new");
+                continue;
+            }
+
+            double change = (r.score - b.score) / b.score;
+            String status;
+            if (regressed(b, r, threshold)) {
+                status = "REGRESSED";
+                regressions.add(r.key());
+            }
+            else if (regressed(r, b, threshold)) {
+                status = "improved";
+            }
+            else {
+                status = "ok";
+            }
+            print(b, r, change, status);
+        }
+        List<String> missing = new ArrayList<>();
+        for (JmhResults.Result b : baseline.values()) {
+            if (include.matcher(b.benchmark).matches()) {
+                print(b, null, Double.NaN, allowMissing ? "missing" : "MISSING");
+                missing.add(b.key());
+            }
+        }
+
+        boolean failed = false;
+        if (!regressions.isEmpty()) {
+            System.out.println(regressions.size() + " regression(s) beyond " + (threshold * 100) + "%");
+            failed = true;
+        }
+        if (!missing.isEmpty()) {
+            System.out.println(missing.size() + " baseline result(s) missing" +
+                               (allowMissing ? ", allowed by gate.allowMissing" : ""));
+            failed |= !allowMissing;
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Returns true if the score of {@code r} is worse than that of
+     * {@code b} beyond their error bounds and the threshold.
+     */
+    static boolean regressed(JmhResults.Result b, JmhResults.Result r, double threshold) {
+        double be = Double.isNaN(b.error) ? 0 : b.error;
+        double re = Double.isNaN(r.error) ? 0 : r.error;
+        return r.higherIsBetter()
+               ? r.score + re < (b.score - be) * (1 - threshold)
+               : r.score - re > (b.score + be) * (1 + threshold);
+    }
+
+    /**
+     * Prints a baseline and current result, either of which may be null.
+     */
+    private static void print(JmhResults.Result b, JmhResults.Result r, double change, String status) {
+        JmhResults.Result id = (r != null) ? r : b;
+        System.out.println(String.format(Locale.ROOT, "%-60s %-6s %10s %22s %22s %9s  %s",
+                                         id.benchmark, id.mode, id.n == null ? "" : id.n,
+                                         b == null ? "" : score(b), r == null ? "" : score(r),
+                                         Double.isNaN(change) ? "" : String.format(Locale.ROOT, "%+.1f%%", change * 100),
+                                         status));
+    }
+
+    private static String score(JmhResults.Result r) {
+        return String.format(Locale.ROOT, "%.3f +- %.3f %s", r.score, r.error, r.unit);
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package oracle.lambda.devoxx;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.GenerateMicroBenchmark;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.IntBuffer;
+import java.util.concurrent.TimeUnit;
+
+/*
+
+java -XX:-TieredCompilation -jar target/microbenchmarks.jar -wi 5 -w 50ms -r 50ms -i 20 -f 1 ".*SegmentedIntStreamSum.*"
+
+java -Xmx48g -XX:-TieredCompilation -Dbenchmark.n=10000000000 -jar target/microbenchmarks.jar -wi 2 -i 5 -f 1 ".*SegmentedIntStreamSum.*"
+
+java -XX:-TieredCompilation -Dbenchmark.store=mapped -Dbenchmark.n=10000000000 -jar target/microbenchmarks.jar -wi 2 -i 5 -f 1 ".*SegmentedIntStreamSum.*"
+
+ */
+
+@State
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SegmentedIntStreamSum {
+
+    private static long N = Long.getLong("benchmark.n", 100000);
+
+    private static String STORE = System.getProperty("benchmark.store", "segmented");
+
+    /*
+       Elements repeat every 100000, as for IntStreamSum with the default N,
+       so that the exact sum of 10^10 mapped elements fits in a long.
+     */
+
+    public IntStores.IntStore store;
+
+    // The segments the loops traverse, arrays for the heap stores and
+    // buffers for the direct and mapped stores, the other being empty
+    public int[][] arrays;
+    public IntBuffer[] buffers;
+
+    @Setup
+    public void setUp() {
+        store = IntStores.create(STORE, "SegmentedIntStreamSum", N, i -> 3 * (int) (i % 100000));
+        arrays = new int[0][];
+        buffers = new IntBuffer[0];
+        if (store instanceof IntStores.ArrayStore) {
+            arrays = new int[][] { ((IntStores.ArrayStore) store).array };
+        }
+        else if (store instanceof IntStores.SegmentedArrayStore) {
+            arrays = ((IntStores.SegmentedArrayStore) store).segments;
+        }
+        else if (store instanceof IntStores.BufferStore) {
+            buffers = ((IntStores.BufferStore) store).segments;
+        }
+        else {
+            throw new IllegalArgumentException("no loop over store: " + STORE);
+        }
+    }
+
+    // The current int reduction, which silently overflows
+
+    @GenerateMicroBenchmark
+    public int loop() {
+        int r = 0;
+        for (int[] segment : arrays) {
+            for (int i : segment) {
+                r += i * 5;
+            }
+        }
+        for (IntBuffer segment : buffers) {
+            for (int j = 0, n = segment.limit(); j < n; j++) {
+                r += segment.get(j) * 5;
+            }
+        }
+        return r;
+    }
+
+    @GenerateMicroBenchmark
+    public int parallel() {
+        return store.stream().parallel().map(e -> e * 5).sum();
+    }
+
+    @GenerateMicroBenchmark
+    public int sequential() {
+        return store.stream().map(e -> e * 5).sum();
+    }
+
+    // Widening each element to a long accumulator
+
+    @GenerateMicroBenchmark
+    public long loopWide() {
+        long r = 0;
+        for (int[] segment : arrays) {
+            for (int i : segment) {
+                r += i * 5L;
+            }
+        }
+        for (IntBuffer segment : buffers) {
+            for (int j = 0, n = segment.limit(); j < n; j++) {
+                r += segment.get(j) * 5L;
+            }
+        }
+        return r;
+    }
+
+    @GenerateMicroBenchmark
+    public long parallelWide() {
+        return store.stream().parallel().asLongStream().map(e -> e * 5).sum();
+    }
+
+    @GenerateMicroBenchmark
+    public long sequentialWide() {
+        return store.stream().asLongStream().map(e -> e * 5).sum();
+    }
+
+    // Widening and checking each addition, throwing ArithmeticException on overflow
+
+    @GenerateMicroBenchmark
+    public long parallelExact() {
+        return store.stream().parallel().asLongStream().map(e -> e * 5).reduce(0L, Math::addExact);
+    }
+
+    @GenerateMicroBenchmark
+    public long sequentialExact() {
+        return store.stream().asLongStream().map(e -> e * 5).reduce(0L, Math::addExact);
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package oracle.lambda.devoxx;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.GenerateMicroBenchmark;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import static java.util.stream.Collectors.toList;
+
+/*
+
+java -XX:-TieredCompilation -jar target/microbenchmarks.jar -wi 5 -i 20 -f 1 ".*SizedCollection.*"
+
+java -XX:-TieredCompilation -Dbenchmark.primes=100000 -Dbenchmark.bitLength=1024 -jar target/microbenchmarks.jar -wi 5 -i 20 -f 1 ".*SizedCollection.*Primes.*"
+
+ */
+
+/**
+ * The cost of collecting stream elements, separated from the cost of
+ * producing them: the elements are either cheap boxed ints or probable
+ * primes generated once, up front.  The filtered variants have a source
+ * whose size is not known, so cannot be written into a presized array.
+ */
+@State
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SizedCollection {
+
+    private static int N = Integer.getInteger("benchmark.n", 1_000_000);
+
+    private static int PRIMES = Integer.getInteger("benchmark.primes", 10_000);
+
+    private static int BIT_LENGTH = Integer.getInteger("benchmark.bitLength", 128);
+
+    private static long SEED = Long.getLong("benchmark.seed", 42L);
+
+    public Integer[] ints;
+    public BigInteger[] primes;
+
+    @Setup
+    public void setUp() {
+        ints = IntStream.range(0, N).boxed().toArray(Integer[]::new);
+        primes = ProbablePrimes.Primes.probablePrimes(BIT_LENGTH, SEED, PRIMES)
+                .parallel()
+                .toArray(BigInteger[]::new);
+    }
+
+    // Cheap, sized
+
+    @GenerateMicroBenchmark
+    public List<Integer> parallelToList() {
+        return Arrays.stream(ints).parallel().collect(toList());
+    }
+
+    @GenerateMicroBenchmark
+    public List<Integer> parallelSpined() {
+        return Arrays.stream(ints).parallel().collect(SizedCollectors.toSpinedList());
+    }
+
+    @GenerateMicroBenchmark
+    public List<Integer> parallelSized() {
+        return SizedCollectors.toList(Arrays.stream(ints).parallel());
+    }
+
+    @GenerateMicroBenchmark
+    public List<Integer> sequentialToList() {
+        return Arrays.stream(ints).collect(toList());
+    }
+
+    @GenerateMicroBenchmark
+    public List<Integer> sequentialSized() {
+        return SizedCollectors.toList(Arrays.stream(ints));
+    }
+
+    // Cheap, not sized
+
+    @GenerateMicroBenchmark
+    public List<Integer> parallelFilteredToList() {
+        return Arrays.stream(ints).parallel().filter(e -> e != -1).collect(toList());
+    }
+
+    @GenerateMicroBenchmark
+    public List<Integer> parallelFilteredSpined() {
+        return Arrays.stream(ints).parallel().filter(e -> e != -1).collect(SizedCollectors.toSpinedList());
+    }
+
+    // Probable primes, sized
+
+    @GenerateMicroBenchmark
+    public List<BigInteger> parallelPrimesToList() {
+        return Arrays.stream(primes).parallel().collect(toList());
+    }
+
+    @GenerateMicroBenchmark
+    public List<BigInteger> parallelPrimesSized() {
+        return SizedCollectors.toList(Arrays.stream(primes).parallel());
+    }
+
+    // Probable primes, not sized
+
+    @GenerateMicroBenchmark
+    public List<BigInteger> parallelPrimesFilteredToList() {
+        return Arrays.stream(primes).parallel().filter(p -> p.signum() > 0).collect(toList());
+    }
+
+    @GenerateMicroBenchmark
+    public List<BigInteger> parallelPrimesFilteredSpined() {
+        return Arrays.stream(primes).parallel().filter(p -> p.signum() > 0).collect(SizedCollectors.toSpinedList());
+    }
+
+    // Primitive, sized and not sized
+
+    @GenerateMicroBenchmark
+    public int[] parallelIntToArray() {
+        return IntStream.range(0, N).parallel().map(e -> e * 5).toArray();
+    }
+
+    @GenerateMicroBenchmark
+    public int[] parallelIntSized() {
+        return SizedCollectors.toArray(IntStream.range(0, N).parallel().map(e -> e * 5));
+    }
+
+    @GenerateMicroBenchmark
+    public int[] parallelIntFilteredToArray() {
+        return IntStream.range(0, N).parallel().filter(e -> e != -1).toArray();
+    }
+
+    @GenerateMicroBenchmark
+    public int[] parallelIntFilteredSpined() {
+        return SizedCollectors.toArray(IntStream.range(0, N).parallel().filter(e -> e != -1));
+    }
+
+    @GenerateMicroBenchmark
+    public long[] parallelLongFilteredToArray() {
+        return new SplittableRandom(SEED).longs(N).parallel().filter(e -> e != 0L).toArray();
+    }
+
+    @GenerateMicroBenchmark
+    public long[] parallelLongFilteredSpined() {
+        return SizedCollectors.toArray(new SplittableRandom(SEED).longs(N).parallel().filter(e -> e != 0L));
+    }
+
+    @GenerateMicroBenchmark
+    public long[] parallelLongSized() {
+        return SizedCollectors.toArray(LongStream.range(0, N).parallel().map(e -> e * 5));
+    }
+}
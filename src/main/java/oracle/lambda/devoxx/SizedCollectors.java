@@ -0,0 +1,423 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package oracle.lambda.devoxx;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.Collector;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Collection of stream elements into lists and arrays without the repeated
+ * copying of {@code collect(toList())}, whose parallel combine appends one
+ * {@code ArrayList} to another at each level of the split tree.
+ * <p>
+ * When the source of a stream is {@code SIZED} and {@code SUBSIZED}, the
+ * elements are written directly into an array of the exact size, each
+ * leaf at the offset given by the sizes of the leaves before it.
+ * Otherwise the elements are accumulated into spines, linked lists of
+ * chunks that combine in constant time by linking one spine after the
+ * other, and are copied once into an array of the total size.
+ */
+public final class SizedCollectors {
+
+    private static final int MIN_CHUNK = 1 << 4;
+    private static final int MAX_CHUNK = 1 << 12;
+
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private SizedCollectors() {
+    }
+
+    /**
+     * Returns a collector accumulating elements into a spine, with constant
+     * time combine, and finishing into a fixed size list.
+     */
+    public static <T> Collector<T, ?, List<T>> toSpinedList() {
+        return Collector.of(Spine<T>::new, Spine::accept, Spine::combine, Spine::toList);
+    }
+
+    /**
+     * Returns the elements of a stream as a fixed size list, evaluated in
+     * parallel if the stream is parallel.
+     */
+    public static <T> List<T> toList(Stream<T> stream) {
+        boolean parallel = stream.isParallel();
+        Spliterator<T> s = stream.spliterator();
+        if (isSized(s)) {
+            Object[] a = new Object[arraySize(s.getExactSizeIfKnown())];
+            fill(new SizedTask<>(s, a, 0, targetSize(a.length)), parallel);
+            return asList(a);
+        }
+        Spine<T> spine;
+        if (parallel) {
+            spine = StreamSupport.stream(s, true).collect(Spine::new, Spine::accept, Spine::combine);
+        }
+        else {
+            spine = new Spine<>();
+            s.forEachRemaining(spine);
+        }
+        return spine.toList();
+    }
+
+    /**
+     * Returns the elements of an {@code IntStream} as an array, evaluated
+     * in parallel if the stream is parallel.
+     */
+    public static int[] toArray(IntStream stream) {
+        boolean parallel = stream.isParallel();
+        Spliterator.OfInt s = stream.spliterator();
+        if (isSized(s)) {
+            int[] a = new int[arraySize(s.getExactSizeIfKnown())];
+            fill(new SizedIntTask(s, a, 0, targetSize(a.length)), parallel);
+            return a;
+        }
+        IntSpine spine;
+        if (parallel) {
+            spine = StreamSupport.intStream(s, true).collect(IntSpine::new, IntSpine::accept, IntSpine::combine);
+        }
+        else {
+            spine = new IntSpine();
+            s.forEachRemaining(spine);
+        }
+        return spine.toArray();
+    }
+
+    /**
+     * Returns the elements of a {@code LongStream} as an array, evaluated
+     * in parallel if the stream is parallel.
+     */
+    public static long[] toArray(LongStream stream) {
+        boolean parallel = stream.isParallel();
+        Spliterator.OfLong s = stream.spliterator();
+        if (isSized(s)) {
+            long[] a = new long[arraySize(s.getExactSizeIfKnown())];
+            fill(new SizedLongTask(s, a, 0, targetSize(a.length)), parallel);
+            return a;
+        }
+        LongSpine spine;
+        if (parallel) {
+            spine = StreamSupport.longStream(s, true).collect(LongSpine::new, LongSpine::accept, LongSpine::combine);
+        }
+        else {
+            spine = new LongSpine();
+            s.forEachRemaining(spine);
+        }
+        return spine.toArray();
+    }
+
+    static boolean isSized(Spliterator<?> s) {
+        return s.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED);
+    }
+
+    static int arraySize(long size) {
+        if (size > MAX_ARRAY_SIZE)
+            throw new IllegalArgumentException("size " + size + " exceeds maximum array size");
+        return (int) size;
+    }
+
+    /**
+     * A leaf size giving about four leaves per worker, as the stream
+     * implementation does.
+     */
+    static long targetSize(long size) {
+        long t = size / (ForkJoinPool.getCommonPoolParallelism() << 2);
+        return t > 0L ? t : 1L;
+    }
+
+    static void fill(AbstractSizedTask<?> task, boolean parallel) {
+        if (parallel) {
+            task.invoke();
+        }
+        else {
+            task.traverse();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> List<T> asList(Object[] a) {
+        return Collections.unmodifiableList(Arrays.asList((T[]) a));
+    }
+
+    /**
+     * Writes the elements of a sized spliterator into an array from an
+     * offset, forking a task for each prefix split off above the target
+     * leaf size, and traversing what remains of the spliterator itself.
+     */
+    private abstract static class AbstractSizedTask<S extends Spliterator<?>> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final S s;
+        final long targetSize;
+        int index;
+        AbstractSizedTask<S> next;
+
+        AbstractSizedTask(S s, int offset, long targetSize) {
+            this.s = s;
+            this.index = offset;
+            this.targetSize = targetSize;
+        }
+
+        abstract AbstractSizedTask<S> child(S s, int offset);
+
+        abstract void traverse(S s);
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void compute() {
+            S right = s;
+            int offset = index;
+            AbstractSizedTask<S> forked = null;
+            S prefix;
+            while (right.estimateSize() > targetSize && (prefix = (S) right.trySplit()) != null) {
+                AbstractSizedTask<S> left = child(prefix, offset);
+                offset += (int) prefix.estimateSize();
+                left.fork();
+                left.next = forked;
+                forked = left;
+            }
+            index = offset;
+            traverse(right);
+            for (AbstractSizedTask<S> t = forked; t != null; t = t.next) {
+                t.join();
+            }
+        }
+
+        final void traverse() {
+            traverse(s);
+        }
+    }
+
+    private static final class SizedTask<T> extends AbstractSizedTask<Spliterator<T>> implements Consumer<T> {
+        private static final long serialVersionUID = 1L;
+
+        final Object[] array;
+
+        SizedTask(Spliterator<T> s, Object[] array, int offset, long targetSize) {
+            super(s, offset, targetSize);
+            this.array = array;
+        }
+
+        SizedTask<T> child(Spliterator<T> s, int offset) {
+            return new SizedTask<>(s, array, offset, targetSize);
+        }
+
+        void traverse(Spliterator<T> s) {
+            s.forEachRemaining(this);
+        }
+
+        public void accept(T t) {
+            array[index++] = t;
+        }
+    }
+
+    private static final class SizedIntTask extends AbstractSizedTask<Spliterator.OfInt> implements IntConsumer {
+        private static final long serialVersionUID = 1L;
+
+        final int[] array;
+
+        SizedIntTask(Spliterator.OfInt s, int[] array, int offset, long targetSize) {
+            super(s, offset, targetSize);
+            this.array = array;
+        }
+
+        SizedIntTask child(Spliterator.OfInt s, int offset) {
+            return new SizedIntTask(s, array, offset, targetSize);
+        }
+
+        void traverse(Spliterator.OfInt s) {
+            s.forEachRemaining((IntConsumer) this);
+        }
+
+        public void accept(int t) {
+            array[index++] = t;
+        }
+    }
+
+    private static final class SizedLongTask extends AbstractSizedTask<Spliterator.OfLong> implements LongConsumer {
+        private static final long serialVersionUID = 1L;
+
+        final long[] array;
+
+        SizedLongTask(Spliterator.OfLong s, long[] array, int offset, long targetSize) {
+            super(s, offset, targetSize);
+            this.array = array;
+        }
+
+        SizedLongTask child(Spliterator.OfLong s, int offset) {
+            return new SizedLongTask(s, array, offset, targetSize);
+        }
+
+        void traverse(Spliterator.OfLong s) {
+            s.forEachRemaining((LongConsumer) this);
+        }
+
+        public void accept(long t) {
+            array[index++] = t;
+        }
+    }
+
+    /**
+     * A chunk of a spine, holding up to the length of its elements array.
+     */
+    private static final class Chunk<A> {
+        final A elements;
+        int size;
+        Chunk<A> next;
+
+        Chunk(A elements) {
+            this.elements = elements;
+        }
+    }
+
+    /**
+     * A linked list of chunks, doubling in capacity up to a maximum chunk
+     * size, that is appended to another in constant time by linking its
+     * chunks after those of the other.  Chunks other than the last may be
+     * partially filled once spines have been combined.
+     */
+    private abstract static class AbstractSpine<A, S extends AbstractSpine<A, S>> {
+        Chunk<A> head, tail;
+        long count;
+
+        abstract A newArray(int length);
+
+        abstract int length(A array);
+
+        /**
+         * Returns the tail chunk, after linking a new one if it is full.
+         */
+        final Chunk<A> tail() {
+            Chunk<A> t = tail;
+            if (t == null) {
+                return head = tail = new Chunk<>(newArray(MIN_CHUNK));
+            }
+            int n = length(t.elements);
+            if (t.size == n) {
+                Chunk<A> c = new Chunk<>(newArray(Math.min(n << 1, MAX_CHUNK)));
+                t.next = c;
+                return tail = c;
+            }
+            return t;
+        }
+
+        @SuppressWarnings("unchecked")
+        final S combine(S other) {
+            if (other.head == null)
+                return (S) this;
+            if (head == null) {
+                head = other.head;
+            }
+            else {
+                tail.next = other.head;
+            }
+            tail = other.tail;
+            count += other.count;
+            return (S) this;
+        }
+
+        /**
+         * Copies the elements of all chunks, in order, into the given array.
+         */
+        final A copyInto(A array) {
+            int offset = 0;
+            for (Chunk<A> c = head; c != null; c = c.next) {
+                System.arraycopy(c.elements, 0, array, offset, c.size);
+                offset += c.size;
+            }
+            return array;
+        }
+    }
+
+    private static final class Spine<T> extends AbstractSpine<Object[], Spine<T>> implements Consumer<T> {
+        Object[] newArray(int length) {
+            return new Object[length];
+        }
+
+        int length(Object[] array) {
+            return array.length;
+        }
+
+        public void accept(T t) {
+            Chunk<Object[]> c = tail();
+            c.elements[c.size++] = t;
+            count++;
+        }
+
+        List<T> toList() {
+            return asList(copyInto(new Object[arraySize(count)]));
+        }
+    }
+
+    private static final class IntSpine extends AbstractSpine<int[], IntSpine> implements IntConsumer {
+        int[] newArray(int length) {
+            return new int[length];
+        }
+
+        int length(int[] array) {
+            return array.length;
+        }
+
+        public void accept(int t) {
+            Chunk<int[]> c = tail();
+            c.elements[c.size++] = t;
+            count++;
+        }
+
+        int[] toArray() {
+            return copyInto(new int[arraySize(count)]);
+        }
+    }
+
+    private static final class LongSpine extends AbstractSpine<long[], LongSpine> implements LongConsumer {
+        long[] newArray(int length) {
+            return new long[length];
+        }
+
+        int length(long[] array) {
+            return array.length;
+        }
+
+        public void accept(long t) {
+            Chunk<long[]> c = tail();
+            c.elements[c.size++] = t;
+            count++;
+        }
+
+        long[] toArray() {
+            return copyInto(new long[arraySize(count)]);
+        }
+    }
+}
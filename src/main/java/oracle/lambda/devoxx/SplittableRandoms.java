@@ -0,0 +1,709 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package oracle.lambda.devoxx;
+
+import java.util.Spliterator;
+import java.util.SplittableRandom;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.DoubleStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Monte Carlo plumbing over {@link SplittableRandom}.
+ * <p>
+ * A simulation is described by a {@link SampleKernel}, producing one
+ * primitive sample from a generator, whose samples are gathered into a
+ * mergeable {@link Accumulator}.  The samples may be evaluated by an
+ * {@link Execution} sequentially, with fork/join over a stream of samples,
+ * or in chunked bulk where each leaf of the split tree accumulates its
+ * samples in a local loop.
+ * <p>
+ * The hit count streams, with their {@link HitCounter} and
+ * {@link Convergence}, are the specialized path used by {@code MonteCarloPi}.
+ */
+final class SplittableRandoms {
+
+    private SplittableRandoms() {
+    }
+
+    /**
+     * Counts the hits of {@code n} samples drawn from a generator.
+     */
+    interface HitCounter {
+        long hits(SplittableRandom rng, long n);
+    }
+
+    /**
+     * Produces one sample from a generator.
+     */
+    public interface SampleKernel {
+        double sample(SplittableRandom rng);
+    }
+
+    /**
+     * Samples the squared distance from the origin, x * x + y * y, of a
+     * point drawn uniformly from the square [-1, 1) x [-1, 1).
+     */
+    public static final SampleKernel SQUARED_DISTANCE = r -> {
+        double x = r.nextDouble(-1, 1);
+        double y = r.nextDouble(-1, 1);
+        return x * x + y * y;
+    };
+
+    /**
+     * A mergeable accumulator of the count, sum, mean and variance of
+     * samples.
+     * <p>
+     * Samples are added with Welford's update and accumulators are merged
+     * with the pairwise update of Chan et al., so partial results from
+     * independent leaves combine without loss of the second moment, which
+     * {@code DoubleSummaryStatistics} does not keep.
+     */
+    public static final class Accumulator {
+        long count;
+        double sum;
+        double mean;
+        double m2;
+
+        public void accept(double x) {
+            long n = ++count;
+            sum += x;
+            double d = x - mean;
+            mean += d / n;
+            m2 += d * (x - mean);
+        }
+
+        public Accumulator combine(Accumulator other) {
+            long n = count, on = other.count;
+            if (on == 0L)
+                return this;
+            if (n == 0L) {
+                count = on;
+                sum = other.sum;
+                mean = other.mean;
+                m2 = other.m2;
+                return this;
+            }
+            long t = n + on;
+            double d = other.mean - mean;
+            mean += d * on / t;
+            m2 += other.m2 + d * d * ((double) n * on / t);
+            sum += other.sum;
+            count = t;
+            return this;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public double sum() {
+            return sum;
+        }
+
+        public double mean() {
+            return count == 0L ? Double.NaN : mean;
+        }
+
+        /**
+         * Returns the unbiased sample variance.
+         */
+        public double variance() {
+            return count < 2L ? Double.NaN : m2 / (count - 1);
+        }
+
+        /**
+         * Returns the standard error of the mean.
+         */
+        public double standardError() {
+            return Math.sqrt(variance() / count);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d, mean=%f, variance=%f, stderr=%f",
+                                 count, mean(), variance(), standardError());
+        }
+    }
+
+    /**
+     * How the samples of a simulation are evaluated.
+     */
+    public enum Execution {
+        /**
+         * A single loop over one generator.
+         */
+        SEQUENTIAL,
+        /**
+         * A parallel {@code DoubleStream} of samples collected into
+         * accumulators, splitting down to single samples if need be.
+         */
+        FORK_JOIN,
+        /**
+         * Tasks forked down to leaves of at most a leaf size of samples,
+         * each accumulated in a local loop.
+         */
+        BULK
+    }
+
+    private static final class SplittableRandomSpliterator implements Spliterator<SplittableRandom> {
+
+        final SplittableRandom rng;
+        long index;
+        final long fence;
+
+        SplittableRandomSpliterator(SplittableRandom rng, long index, long fence) {
+            this.rng = rng;
+            this.index = index;
+            this.fence = fence;
+        }
+
+        public SplittableRandomSpliterator trySplit() {
+            long i = index, m = (i + fence) >>> 1;
+            return (m <= i) ? null :
+                   new SplittableRandomSpliterator(rng.split(), i, index = m);
+        }
+
+        public long estimateSize() {
+            return fence - index;
+        }
+
+        public int characteristics() {
+            return (Spliterator.SIZED | Spliterator.SUBSIZED |
+                    Spliterator.NONNULL | Spliterator.IMMUTABLE);
+        }
+
+        public boolean tryAdvance(Consumer<? super SplittableRandom> consumer) {
+            if (consumer == null) throw new NullPointerException();
+            long i = index, f = fence;
+            if (i < f) {
+                consumer.accept(rng);
+                index = i + 1;
+                return true;
+            }
+            return false;
+        }
+
+        public void forEachRemaining(Consumer<? super SplittableRandom> consumer) {
+            if (consumer == null) throw new NullPointerException();
+            long i = index, f = fence;
+            if (i < f) {
+                index = f;
+                SplittableRandom r = rng;
+                do {
+                    consumer.accept(r);
+                }
+                while (++i < f);
+            }
+        }
+    }
+
+    private static final class SampleSpliterator implements Spliterator.OfDouble {
+
+        final SplittableRandom rng;
+        long index;
+        final long fence;
+        final SampleKernel kernel;
+
+        SampleSpliterator(SplittableRandom rng, long index, long fence, SampleKernel kernel) {
+            this.rng = rng;
+            this.index = index;
+            this.fence = fence;
+            this.kernel = kernel;
+        }
+
+        public SampleSpliterator trySplit() {
+            long i = index, m = (i + fence) >>> 1;
+            return (m <= i) ? null :
+                   new SampleSpliterator(rng.split(), i, index = m, kernel);
+        }
+
+        public long estimateSize() {
+            return fence - index;
+        }
+
+        public int characteristics() {
+            return (Spliterator.SIZED | Spliterator.SUBSIZED |
+                    Spliterator.NONNULL | Spliterator.IMMUTABLE);
+        }
+
+        public boolean tryAdvance(DoubleConsumer consumer) {
+            if (consumer == null) throw new NullPointerException();
+            long i = index, f = fence;
+            if (i < f) {
+                consumer.accept(kernel.sample(rng));
+                index = i + 1;
+                return true;
+            }
+            return false;
+        }
+
+        public void forEachRemaining(DoubleConsumer consumer) {
+            if (consumer == null) throw new NullPointerException();
+            long i = index, f = fence;
+            if (i < f) {
+                index = f;
+                SplittableRandom r = rng;
+                SampleKernel k = kernel;
+                do {
+                    consumer.accept(k.sample(r));
+                }
+                while (++i < f);
+            }
+        }
+    }
+
+    /**
+     * A spliterator over a range of samples that splits no further than
+     * a given leaf size and reports, as a single element, an accumulator
+     * of the samples in its remaining range.
+     * <p>
+     * As with {@code HitCountSpliterator} the spliterator completes its
+     * own splitting when traversed, so the leaves, and so the samples, for
+     * a given root generator do not depend on how much splitting was done
+     * by a parallel evaluation.  Counts and sums of integral samples are
+     * therefore reproducible; other moments may differ in rounding with
+     * the order in which leaves are merged.
+     */
+    private static final class AccumulatorSpliterator implements Spliterator<Accumulator> {
+
+        final SplittableRandom rng;
+        long index;
+        final long fence;
+        final long leafSize;
+        final SampleKernel kernel;
+
+        AccumulatorSpliterator(SplittableRandom rng, long index, long fence, long leafSize,
+                               SampleKernel kernel) {
+            this.rng = rng;
+            this.index = index;
+            this.fence = fence;
+            this.leafSize = leafSize;
+            this.kernel = kernel;
+        }
+
+        public AccumulatorSpliterator trySplit() {
+            long i = index, m = (i + fence) >>> 1;
+            return (fence - i <= leafSize) ? null :
+                   new AccumulatorSpliterator(rng.split(), i, index = m, leafSize, kernel);
+        }
+
+        public long estimateSize() {
+            return fence - index;
+        }
+
+        public int characteristics() {
+            return (Spliterator.NONNULL | Spliterator.IMMUTABLE);
+        }
+
+        public boolean tryAdvance(Consumer<? super Accumulator> consumer) {
+            if (consumer == null) throw new NullPointerException();
+            long i = index, f = fence;
+            if (i < f) {
+                consumer.accept(remaining());
+                return true;
+            }
+            return false;
+        }
+
+        public void forEachRemaining(Consumer<? super Accumulator> consumer) {
+            tryAdvance(consumer);
+        }
+
+        Accumulator remaining() {
+            Accumulator a = new Accumulator();
+            for (AccumulatorSpliterator prefix; (prefix = trySplit()) != null; ) {
+                a.combine(prefix.remaining());
+            }
+            long n = fence - index;
+            index = fence;
+            return a.combine(accumulate(rng, n, kernel));
+        }
+    }
+
+    /**
+     * Accumulates a range of samples, forking a task for the first half of
+     * the range, and computing the second, down to the leaf size, splitting
+     * generators in the same order as {@code AccumulatorSpliterator}.
+     */
+    private static final class AccumulatorTask extends RecursiveTask<Accumulator> {
+        private static final long serialVersionUID = 1L;
+
+        final SplittableRandom rng;
+        final long from, to, leafSize;
+        final SampleKernel kernel;
+
+        AccumulatorTask(SplittableRandom rng, long from, long to, long leafSize, SampleKernel kernel) {
+            this.rng = rng;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+            this.kernel = kernel;
+        }
+
+        @Override
+        protected Accumulator compute() {
+            if (to - from <= leafSize) {
+                return accumulate(rng, to - from, kernel);
+            }
+            long m = (from + to) >>> 1;
+            AccumulatorTask left = new AccumulatorTask(rng.split(), from, m, leafSize, kernel);
+            left.fork();
+            Accumulator r = new AccumulatorTask(rng, m, to, leafSize, kernel).compute();
+            return left.join().combine(r);
+        }
+    }
+
+    /**
+     * Accumulates hits and samples across leaves, and determines when
+     * the estimate of pi has converged, that is when the half width of
+     * its 99% confidence interval falls below a given epsilon.
+     */
+    static final class Convergence {
+        static final double Z = 2.576;
+
+        final double epsilon;
+        final LongAdder hits = new LongAdder();
+        final LongAdder samples = new LongAdder();
+        volatile boolean converged;
+
+        Convergence(double epsilon) {
+            if (!(epsilon > 0))
+                throw new IllegalArgumentException("epsilon must be positive");
+            this.epsilon = epsilon;
+        }
+
+        void add(long h, long n) {
+            hits.add(h);
+            samples.add(n);
+            if (!converged && halfWidth() < epsilon) {
+                converged = true;
+            }
+        }
+
+        double halfWidth() {
+            long n = samples.sum();
+            if (n == 0)
+                return Double.POSITIVE_INFINITY;
+            double p = (double) hits.sum() / n;
+            return Z * 4.0 * Math.sqrt(p * (1 - p) / n);
+        }
+
+        double estimate() {
+            return (4.0 * hits.sum()) / samples.sum();
+        }
+    }
+
+    /**
+     * A spliterator over a range of samples that splits no further than
+     * a given leaf size and reports, as a single element, the number of
+     * samples in its remaining range that fall within the circle.
+     * <p>
+     * When traversed, the spliterator first completes its own splitting
+     * down to the leaf size, counting each leaf with its own generator.
+     * Since a split depends only on the range and generator split, the
+     * leaves, and so the result for a given root generator, are the same
+     * however much splitting was done by a parallel evaluation.
+     * <p>
+     * The leaf size does not control the granularity of a parallel stream
+     * evaluation, whose tasks stop splitting at a size derived from the
+     * estimated size and the parallelism, see {@code HitCountTask}.
+     * <p>
+     * If given a {@code Convergence}, each leaf adds its counts to it,
+     * and leaves not yet counted when it has converged count nothing.
+     */
+    private static final class HitCountSpliterator implements Spliterator.OfLong {
+
+        final SplittableRandom rng;
+        long index;
+        final long fence;
+        final long leafSize;
+        final HitCounter counter;
+        final Convergence convergence;
+
+        HitCountSpliterator(SplittableRandom rng, long index, long fence, long leafSize,
+                            HitCounter counter, Convergence convergence) {
+            this.rng = rng;
+            this.index = index;
+            this.fence = fence;
+            this.leafSize = leafSize;
+            this.counter = counter;
+            this.convergence = convergence;
+        }
+
+        public HitCountSpliterator trySplit() {
+            long i = index, m = (i + fence) >>> 1;
+            return (fence - i <= leafSize) ? null :
+                   new HitCountSpliterator(rng.split(), i, index = m, leafSize, counter, convergence);
+        }
+
+        public long estimateSize() {
+            return fence - index;
+        }
+
+        public int characteristics() {
+            return (Spliterator.NONNULL | Spliterator.IMMUTABLE);
+        }
+
+        public boolean tryAdvance(LongConsumer consumer) {
+            if (consumer == null) throw new NullPointerException();
+            long i = index, f = fence;
+            if (i < f) {
+                consumer.accept(remainingHits());
+                return true;
+            }
+            return false;
+        }
+
+        public void forEachRemaining(LongConsumer consumer) {
+            tryAdvance(consumer);
+        }
+
+        long remainingHits() {
+            long h = 0L;
+            for (HitCountSpliterator prefix; (prefix = trySplit()) != null; ) {
+                h += prefix.remainingHits();
+            }
+            long n = fence - index;
+            index = fence;
+            return h + leafHits(rng, n, counter, convergence);
+        }
+    }
+
+    /**
+     * Counts the hits of a leaf, adding them to the convergence, if any,
+     * or counting nothing if it has converged.
+     */
+    static long leafHits(SplittableRandom rng, long n, HitCounter counter, Convergence c) {
+        if (c == null) {
+            return counter.hits(rng, n);
+        }
+        if (c.converged) {
+            return 0L;
+        }
+        long h = counter.hits(rng, n);
+        c.add(h, n);
+        return h;
+    }
+
+    /**
+     * Counts the hits of a range of samples, forking a task for the first
+     * half of the range, and computing the second, down to the leaf size.
+     * <p>
+     * Each task splits its generator for the first half in the same order
+     * as {@code HitCountSpliterator} does, so the leaves, and so the
+     * result for a given root generator, are the same as those of a hit
+     * count stream.  Unlike a parallel stream, whose tasks stop splitting
+     * at a size derived from the number of samples and the parallelism,
+     * the leaf size sets the granularity of the parallel evaluation.
+     */
+    private static final class HitCountTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        final SplittableRandom rng;
+        final long from, to, leafSize;
+        final HitCounter counter;
+        final Convergence convergence;
+
+        HitCountTask(SplittableRandom rng, long from, long to, long leafSize,
+                     HitCounter counter, Convergence convergence) {
+            this.rng = rng;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+            this.counter = counter;
+            this.convergence = convergence;
+        }
+
+        @Override
+        protected Long compute() {
+            if (to - from <= leafSize) {
+                return leafHits(rng, to - from, counter, convergence);
+            }
+            long m = (from + to) >>> 1;
+            HitCountTask left = new HitCountTask(rng.split(), from, m, leafSize, counter, convergence);
+            left.fork();
+            long r = new HitCountTask(rng, m, to, leafSize, counter, convergence).compute();
+            return left.join() + r;
+        }
+    }
+
+    public static Stream<SplittableRandom> generators() {
+        return generators(new SplittableRandom(), Long.MAX_VALUE);
+    }
+
+    public static Stream<SplittableRandom> generators(long streamSize) {
+        return generators(new SplittableRandom(), streamSize);
+    }
+
+    public static Stream<SplittableRandom> generators(SplittableRandom sr, long streamSize) {
+        if (streamSize < 0L)
+            throw new IllegalArgumentException("size must be non-negative");
+        return StreamSupport.stream(new SplittableRandomSpliterator(sr, 0L, streamSize), false);
+    }
+
+    /**
+     * Returns a stream of squared distances from the origin, x * x + y * y,
+     * of points sampled uniformly from the square [-1, 1) x [-1, 1).
+     * <p>
+     * The samples are produced directly into a {@code DoubleStream} so
+     * no per-sample object is passed down the pipeline.
+     */
+    public static DoubleStream squaredDistances(long streamSize) {
+        return squaredDistances(new SplittableRandom(), streamSize);
+    }
+
+    public static DoubleStream squaredDistances(SplittableRandom sr, long streamSize) {
+        if (streamSize < 0L)
+            throw new IllegalArgumentException("size must be non-negative");
+        return samples(sr, streamSize, SQUARED_DISTANCE);
+    }
+
+    /**
+     * Returns a stream of {@code streamSize} samples produced by the
+     * given kernel.
+     */
+    public static DoubleStream samples(SplittableRandom sr, long streamSize, SampleKernel kernel) {
+        if (streamSize < 0L)
+            throw new IllegalArgumentException("size must be non-negative");
+        return StreamSupport.doubleStream(new SampleSpliterator(sr, 0L, streamSize, kernel), false);
+    }
+
+    /**
+     * Returns a stream of per-leaf accumulators for {@code streamSize}
+     * samples produced by the given kernel, where each leaf accumulates
+     * at most {@code leafSize} samples in a local loop.
+     */
+    public static Stream<Accumulator> accumulators(SplittableRandom sr, long streamSize, long leafSize,
+                                                   SampleKernel kernel) {
+        if (streamSize < 0L)
+            throw new IllegalArgumentException("size must be non-negative");
+        if (leafSize < 1L)
+            throw new IllegalArgumentException("leaf size must be positive");
+        return StreamSupport.stream(new AccumulatorSpliterator(sr, 0L, streamSize, leafSize, kernel), false);
+    }
+
+    /**
+     * Accumulates {@code n} samples produced by the given kernel from a
+     * single generator.
+     */
+    public static Accumulator accumulate(SplittableRandom rng, long n, SampleKernel kernel) {
+        Accumulator a = new Accumulator();
+        for (long i = 0; i < n; i++) {
+            a.accept(kernel.sample(rng));
+        }
+        return a;
+    }
+
+    /**
+     * Runs a simulation of {@code n} samples produced by the given kernel.
+     *
+     * @param sr the root generator
+     * @param n the number of samples
+     * @param kernel the sample kernel
+     * @param execution how the samples are evaluated
+     * @param leafSize the maximum samples per leaf for {@link Execution#BULK}
+     * @return the accumulated samples
+     */
+    public static Accumulator simulate(SplittableRandom sr, long n, SampleKernel kernel,
+                                       Execution execution, long leafSize) {
+        switch (execution) {
+            case SEQUENTIAL:
+                return accumulate(sr, n, kernel);
+            case FORK_JOIN:
+                return samples(sr, n, kernel).parallel()
+                        .collect(Accumulator::new, Accumulator::accept, Accumulator::combine);
+            case BULK:
+                if (leafSize < 1L)
+                    throw new IllegalArgumentException("leaf size must be positive");
+                return new AccumulatorTask(sr, 0L, n, leafSize, kernel).invoke();
+            default:
+                throw new IllegalArgumentException(execution.toString());
+        }
+    }
+
+    /**
+     * Returns a stream of per-leaf hit counts for {@code streamSize}
+     * samples, where each leaf counts the hits of at most
+     * {@code leafSize} samples in a local loop with the given counter.
+     */
+    public static LongStream hits(long streamSize, long leafSize, HitCounter counter) {
+        return hits(new SplittableRandom(), streamSize, leafSize, counter);
+    }
+
+    public static LongStream hits(SplittableRandom sr, long streamSize, long leafSize,
+                                  HitCounter counter) {
+        if (streamSize < 0L)
+            throw new IllegalArgumentException("size must be non-negative");
+        if (leafSize < 1L)
+            throw new IllegalArgumentException("leaf size must be positive");
+        return StreamSupport.longStream(new HitCountSpliterator(sr, 0L, streamSize, leafSize, counter, null), false);
+    }
+
+    /**
+     * Returns a stream of per-leaf hit counts, of at most
+     * {@code streamSize} samples, whose leaves add their counts to the
+     * given convergence and stop counting once it has converged.
+     */
+    public static LongStream hits(SplittableRandom sr, long streamSize, long leafSize,
+                                  HitCounter counter, Convergence convergence) {
+        if (streamSize < 0L)
+            throw new IllegalArgumentException("size must be non-negative");
+        if (leafSize < 1L)
+            throw new IllegalArgumentException("leaf size must be positive");
+        return StreamSupport.longStream(new HitCountSpliterator(sr, 0L, streamSize, leafSize, counter, convergence), false);
+    }
+
+    /**
+     * Returns the hits of {@code streamSize} samples counted in parallel,
+     * in the common pool, by tasks forked down to leaves of at most
+     * {@code leafSize} samples.
+     */
+    public static long parallelHits(long streamSize, long leafSize, HitCounter counter) {
+        return parallelHits(new SplittableRandom(), streamSize, leafSize, counter, null);
+    }
+
+    /**
+     * Returns the hits of at most {@code streamSize} samples counted in
+     * parallel by tasks forked down to leaves of at most {@code leafSize}
+     * samples, whose leaves, if given a convergence, add their counts to it
+     * and stop counting once it has converged.  The leaves, and so the
+     * result, are those of the equivalent hit count stream.
+     */
+    public static long parallelHits(SplittableRandom sr, long streamSize, long leafSize,
+                                    HitCounter counter, Convergence convergence) {
+        if (streamSize < 0L)
+            throw new IllegalArgumentException("size must be non-negative");
+        if (leafSize < 1L)
+            throw new IllegalArgumentException("leaf size must be positive");
+        return new HitCountTask(sr, 0L, streamSize, leafSize, counter, convergence).invoke();
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package oracle.lambda.devoxx;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Counters for the traversal of stream sources, exposed via JMX.
+ * <p>
+ * A source spliterator is instrumented by wrapping it. The wrapper counts
+ * splits and, for each leaf, that is each bulk traversal, the number of
+ * elements traversed and the time taken, accumulated in {@code LongAdder}s
+ * and in histograms with power of two buckets. Elements are counted in a
+ * local field and added once per leaf, so the cost per element is an
+ * increment. Work stealing is reported as the growth in the common pool's
+ * steal count since the metrics were created or reset.
+ * <p>
+ * Instrumentation is enabled with the system property
+ * {@code stream.metrics}. When disabled, sources are not wrapped, leaving
+ * only the test of a static final field.
+ */
+public final class StreamMetrics implements StreamMetricsMBean {
+
+    public static final boolean ENABLED = Boolean.getBoolean("stream.metrics");
+
+    private static final int BUCKETS = 64;
+
+    private final LongAdder elements = new LongAdder();
+    private final LongAdder splits = new LongAdder();
+    private final LongAdder leaves = new LongAdder();
+    private final LongAdder leafNanos = new LongAdder();
+    private final LongAdder[] leafSizes = adders();
+    private final LongAdder[] leafTimes = adders();
+    private volatile long stealBase = ForkJoinPool.commonPool().getStealCount();
+
+    private static LongAdder[] adders() {
+        LongAdder[] as = new LongAdder[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            as[i] = new LongAdder();
+        }
+        return as;
+    }
+
+    /**
+     * Creates metrics registered with the platform MBean server under the
+     * name {@code oracle.lambda.devoxx:type=StreamMetrics,name=<name>},
+     * replacing any registered under that name.
+     */
+    public static StreamMetrics register(String name) {
+        StreamMetrics m = new StreamMetrics();
+        try {
+            ObjectName on = new ObjectName("oracle.lambda.devoxx:type=StreamMetrics,name=" + ObjectName.quote(name));
+            if (ManagementFactory.getPlatformMBeanServer().isRegistered(on)) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(on);
+            }
+            ManagementFactory.getPlatformMBeanServer().registerMBean(m, on);
+        }
+        catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+        return m;
+    }
+
+    public IntStream intStream(Spliterator.OfInt s, boolean parallel) {
+        return StreamSupport.intStream(ENABLED ? new InstrumentedIntSpliterator(s, this) : s, parallel);
+    }
+
+    public <T> Stream<T> stream(Spliterator<T> s, boolean parallel) {
+        return StreamSupport.stream(ENABLED ? new InstrumentedSpliterator<>(s, this) : s, parallel);
+    }
+
+    private static int bucket(long v) {
+        return (v <= 0) ? 0 : BUCKETS - Long.numberOfLeadingZeros(v) - 1;
+    }
+
+    void leaf(long n, long nanos) {
+        elements.add(n);
+        leaves.increment();
+        leafNanos.add(nanos);
+        leafSizes[bucket(n)].increment();
+        leafTimes[bucket(nanos)].increment();
+    }
+
+    public long getElements() {
+        return elements.sum();
+    }
+
+    public long getSplits() {
+        return splits.sum();
+    }
+
+    public long getLeaves() {
+        return leaves.sum();
+    }
+
+    public long getLeafNanos() {
+        return leafNanos.sum();
+    }
+
+    public double getMeanLeafSize() {
+        long l = leaves.sum();
+        return (l == 0) ? 0 : (double) elements.sum() / l;
+    }
+
+    public double getMeanLeafMicros() {
+        long l = leaves.sum();
+        return (l == 0) ? 0 : leafNanos.sum() / 1e3 / l;
+    }
+
+    public long getSteals() {
+        return ForkJoinPool.commonPool().getStealCount() - stealBase;
+    }
+
+    /**
+     * Returns the number of leaves by size, bucket i counting leaves of
+     * [2^i, 2^(i+1)) elements, bucket 0 also counting empty leaves.
+     */
+    public long[] getLeafSizeHistogram() {
+        return sums(leafSizes);
+    }
+
+    /**
+     * Returns the number of leaves by time taken, bucket i counting leaves
+     * taking [2^i, 2^(i+1)) nanoseconds.
+     */
+    public long[] getLeafNanosHistogram() {
+        return sums(leafTimes);
+    }
+
+    private static long[] sums(LongAdder[] as) {
+        long[] s = new long[as.length];
+        for (int i = 0; i < as.length; i++) {
+            s[i] = as[i].sum();
+        }
+        return s;
+    }
+
+    public void reset() {
+        elements.reset();
+        splits.reset();
+        leaves.reset();
+        leafNanos.reset();
+        for (int i = 0; i < BUCKETS; i++) {
+            leafSizes[i].reset();
+            leafTimes[i].reset();
+        }
+        stealBase = ForkJoinPool.commonPool().getStealCount();
+    }
+
+    private static final class InstrumentedIntSpliterator implements Spliterator.OfInt, IntConsumer {
+        final Spliterator.OfInt s;
+        final StreamMetrics m;
+        IntConsumer consumer;
+        long count;
+
+        InstrumentedIntSpliterator(Spliterator.OfInt s, StreamMetrics m) {
+            this.s = s;
+            this.m = m;
+        }
+
+        public Spliterator.OfInt trySplit() {
+            Spliterator.OfInt p = s.trySplit();
+            if (p == null)
+                return null;
+            m.splits.increment();
+            return new InstrumentedIntSpliterator(p, m);
+        }
+
+        public boolean tryAdvance(IntConsumer action) {
+            if (s.tryAdvance(action)) {
+                m.elements.increment();
+                return true;
+            }
+            return false;
+        }
+
+        public void forEachRemaining(IntConsumer action) {
+            if (action == null) throw new NullPointerException();
+            consumer = action;
+            count = 0;
+            long t = System.nanoTime();
+            s.forEachRemaining(this);
+            m.leaf(count, System.nanoTime() - t);
+            consumer = null;
+        }
+
+        public void accept(int e) {
+            count++;
+            consumer.accept(e);
+        }
+
+        public long estimateSize() {
+            return s.estimateSize();
+        }
+
+        public long getExactSizeIfKnown() {
+            return s.getExactSizeIfKnown();
+        }
+
+        public int characteristics() {
+            return s.characteristics();
+        }
+
+        public Comparator<? super Integer> getComparator() {
+            return s.getComparator();
+        }
+    }
+
+    private static final class InstrumentedSpliterator<T> implements Spliterator<T>, Consumer<T> {
+        final Spliterator<T> s;
+        final StreamMetrics m;
+        Consumer<? super T> consumer;
+        long count;
+
+        InstrumentedSpliterator(Spliterator<T> s, StreamMetrics m) {
+            this.s = s;
+            this.m = m;
+        }
+
+        public Spliterator<T> trySplit() {
+            Spliterator<T> p = s.trySplit();
+            if (p == null)
+                return null;
+            m.splits.increment();
+            return new InstrumentedSpliterator<>(p, m);
+        }
+
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (s.tryAdvance(action)) {
+                m.elements.increment();
+                return true;
+            }
+            return false;
+        }
+
+        public void forEachRemaining(Consumer<? super T> action) {
+            if (action == null) throw new NullPointerException();
+            consumer = action;
+            count = 0;
+            long t = System.nanoTime();
+            s.forEachRemaining(this);
+            m.leaf(count, System.nanoTime() - t);
+            consumer = null;
+        }
+
+        public void accept(T e) {
+            count++;
+            consumer.accept(e);
+        }
+
+        public long estimateSize() {
+            return s.estimateSize();
+        }
+
+        public long getExactSizeIfKnown() {
+            return s.getExactSizeIfKnown();
+        }
+
+        public int characteristics() {
+            return s.characteristics();
+        }
+
+        public Comparator<? super T> getComparator() {
+            return s.getComparator();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package oracle.lambda.devoxx;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+
+java -cp target/microbenchmarks.jar oracle.lambda.devoxx.Sweep IntStreamSum
+
+java -Dsweep.n=1000,1000000 -Dsweep.jmhArgs="-wi 5 -i 10 -f 1" -cp target/microbenchmarks.jar oracle.lambda.devoxx.Sweep MonteCarloPi
+
+ */
+
+/**
+ * Runs a benchmark, or set of benchmarks matching a name, at each size of
+ * a sweep and merges the results into one CSV and one JSON file.
+ * <p>
+ * Sizes are read once per JVM, from the system property
+ * {@code benchmark.n}, so each size is run by its own JMH instance, as
+ * {@code run.sh} did. The merged results are tagged with their size, and a
+ * further CSV file reports, per size, the speedup of each parallel
+ * benchmark over its sequential counterpart and of each sequential
+ * benchmark over its loop counterpart, e.g. {@code parallel} over
+ * {@code sequential} and {@code sequential} over {@code loop}, or
+ * {@code parallelBoxed} over {@code sequentialBoxed}.
+ * <p>
+ * The sweep is configured with the system properties {@code sweep.n},
+ * a comma separated list of sizes, {@code sweep.jvmArgs},
+ * {@code sweep.jmhArgs} and {@code sweep.out}, the output directory.
+ */
+public final class Sweep {
+
+    static final String DEFAULT_N = "1,10,100,1000,10000,100000,1000000,10000000";
+
+    static final String DEFAULT_JVM_ARGS = "-XX:-TieredCompilation -XX:MaxInlineLevel=11";
+
+    static final String DEFAULT_JMH_ARGS = "-f 2";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            System.err.println("usage: Sweep <benchmark>");
+            System.exit(2);
+        }
+        String test = args[0];
+        List<String> ns = Arrays.asList(System.getProperty("sweep.n", DEFAULT_N).split(","));
+        Path out = Paths.get(System.getProperty("sweep.out", "."));
+        Files.createDirectories(out);
+
+        List<JmhResults.Result> rs = new ArrayList<>();
+        for (String n : ns) {
+            Path csv = out.resolve(test + "." + n.trim() + ".txt");
+            List<String> command = new ArrayList<>();
+            command.addAll(javaCommand(System.getProperty("sweep.jvmArgs", DEFAULT_JVM_ARGS)));
+            command.add("-Dbenchmark.n=" + n.trim());
+            command.add("-jar");
+            command.add(jar());
+            command.addAll(words(System.getProperty("sweep.jmhArgs", DEFAULT_JMH_ARGS)));
+            command.addAll(Arrays.asList("-rf", "csv", "-rff", csv.toString(), ".*" + test + ".*"));
+
+            int status = run(command);
+            if (status != 0) {
+                System.err.println("benchmark run at N=" + n + " failed with exit status " + status);
+                System.exit(status);
+            }
+            for (JmhResults.Result r : JmhResults.read(csv)) {
+                rs.add(r.withN(n.trim()));
+            }
+        }
+
+        JmhResults.writeCsv(out.resolve(test + ".sweep.csv"), rs);
+        JmhResults.writeJson(out.resolve(test + ".sweep.json"), rs);
+        writeSpeedups(out.resolve(test + ".speedup.csv"), rs);
+    }
+
+    static List<String> javaCommand(String jvmArgs) {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(words(jvmArgs));
+        return command;
+    }
+
+    static List<String> words(String s) {
+        List<String> ws = new ArrayList<>();
+        for (String w : s.trim().split("\\s+")) {
+            if (!w.isEmpty()) {
+                ws.add(w);
+            }
+        }
+        return ws;
+    }
+
+    /**
+     * Returns the path of the jar, or directory, this class was loaded from.
+     */
+    static String jar() throws Exception {
+        return new File(Sweep.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+    }
+
+    static int run(List<String> command) throws IOException, InterruptedException {
+        System.out.println(String.join(" ", command));
+        return new ProcessBuilder(command).inheritIO().start().waitFor();
+    }
+
+    static void writeSpeedups(Path file, List<JmhResults.Result> rs) throws IOException {
+        Map<String, JmhResults.Result> byKey = new LinkedHashMap<>();
+        for (JmhResults.Result r : rs) {
+            byKey.put(r.type() + "|" + r.method() + "|" + r.mode + "|" + r.threads + "|" + r.n, r);
+        }
+
+        try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            w.write("\"Benchmark\",\"Mode\",\"N\",\"Baseline\",\"Speedup\"");
+            w.newLine();
+            for (JmhResults.Result r : rs) {
+                String m = r.method();
+                String baseline = m.startsWith("parallel") ? "sequential" + m.substring("parallel".length())
+                                : m.startsWith("sequential") ? "loop" + m.substring("sequential".length())
+                                : null;
+                if (baseline == null)
+                    continue;
+                JmhResults.Result b = byKey.get(r.type() + "|" + baseline + "|" + r.mode + "|" + r.threads + "|" + r.n);
+                if (b == null)
+                    continue;
+                double speedup = r.higherIsBetter() ? r.score / b.score : b.score / r.score;
+                w.write(String.format(Locale.ROOT, "\"%s\",\"%s\",\"%s\",\"%s\",%f",
+                                      r.benchmark, r.mode, r.n, b.benchmark, speedup));
+                w.newLine();
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package oracle.lambda.devoxx;
+
+import java.util.Spliterator;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Evaluates {@code map}, {@code filter} and {@code reduce} pipelines over
+ * sources of {@code Integer}s unboxed, boxing only the result.
+ * <p>
+ * A pipeline such as
+ * <pre>{@code
+ *     Arrays.stream(boxedArray).map(e -> e * 5).reduce(0, Integer::sum)
+ * }</pre>
+ * boxes the result of each mapping and reduction step, allocating once
+ * values fall outside the {@code Integer} cache. The same lambdas can be
+ * used, unchanged, with
+ * <pre>{@code
+ *     UnboxedIntegers.of(boxedArray).map(e -> e * 5).reduce(0, Integer::sum)
+ * }</pre>
+ * which unboxes each element of the array as it is traversed and then
+ * evaluates an {@code IntStream} pipeline.
+ */
+public final class UnboxedIntegers {
+
+    private IntStream s;
+
+    private UnboxedIntegers(IntStream s) {
+        this.s = s;
+    }
+
+    public static UnboxedIntegers of(Integer[] array) {
+        return new UnboxedIntegers(StreamSupport.intStream(
+                new IntegerArraySpliterator(array, 0, array.length), false));
+    }
+
+    /**
+     * Adapts any stream of {@code Integer}s, such as one over a collection.
+     * Elements are unboxed at the source so, as for an array, no boxing
+     * takes place until the result.
+     */
+    public static UnboxedIntegers of(Stream<Integer> stream) {
+        IntStream s = stream.mapToInt(Integer::intValue);
+        return new UnboxedIntegers(stream.isParallel() ? s.parallel() : s);
+    }
+
+    public UnboxedIntegers parallel() {
+        s = s.parallel();
+        return this;
+    }
+
+    public UnboxedIntegers sequential() {
+        s = s.sequential();
+        return this;
+    }
+
+    public UnboxedIntegers map(IntUnaryOperator mapper) {
+        s = s.map(mapper);
+        return this;
+    }
+
+    public UnboxedIntegers filter(IntPredicate predicate) {
+        s = s.filter(predicate);
+        return this;
+    }
+
+    public Integer reduce(int identity, IntBinaryOperator op) {
+        return s.reduce(identity, op);
+    }
+
+    public Integer sum() {
+        return s.sum();
+    }
+
+    public IntStream asIntStream() {
+        return s;
+    }
+
+    /**
+     * Traverses an {@code Integer[]} unboxing each element.
+     */
+    private static final class IntegerArraySpliterator implements Spliterator.OfInt {
+
+        final Integer[] array;
+        int index;
+        final int fence;
+
+        IntegerArraySpliterator(Integer[] array, int index, int fence) {
+            this.array = array;
+            this.index = index;
+            this.fence = fence;
+        }
+
+        public IntegerArraySpliterator trySplit() {
+            int i = index, m = (i + fence) >>> 1;
+            return (m <= i) ? null :
+                   new IntegerArraySpliterator(array, i, index = m);
+        }
+
+        public long estimateSize() {
+            return fence - index;
+        }
+
+        public int characteristics() {
+            return (Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED |
+                    Spliterator.IMMUTABLE);
+        }
+
+        public boolean tryAdvance(IntConsumer consumer) {
+            if (consumer == null) throw new NullPointerException();
+            int i = index;
+            if (i < fence) {
+                consumer.accept(array[i]);
+                index = i + 1;
+                return true;
+            }
+            return false;
+        }
+
+        public void forEachRemaining(IntConsumer consumer) {
+            if (consumer == null) throw new NullPointerException();
+            Integer[] a = array;
+            int i = index, f = fence;
+            index = f;
+            for (; i < f; i++) {
+                consumer.accept(a[i]);
+            }
+        }
+    }
+}